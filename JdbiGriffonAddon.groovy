@@ -16,11 +16,14 @@
 
 import griffon.core.GriffonClass
 import griffon.core.GriffonApplication
+import griffon.util.ApplicationHolder
 import griffon.plugins.jdbi.JdbiConnector
 import griffon.plugins.jdbi.JdbiEnhancer
+import griffon.plugins.jdbi.JdbiMetrics
+import griffon.plugins.jdbi.JdbiTracer
 import griffon.plugins.jdbi.JdbiContributionHandler
-
-import static griffon.util.ConfigUtils.getConfigValueAsBoolean
+import griffon.plugins.jdbi.JdbiProvider
+import griffon.plugins.jdbi.DefaultJdbiProvider
 
 
 /**
@@ -28,23 +31,37 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean
  */
 class JdbiGriffonAddon {
     void addonPostInit(GriffonApplication app) {
+        JdbiMetrics.instance.configure(app)
+        JdbiTracer.instance.configure(app)
+        JdbiProvider provider = JdbiConnector.instance.resolveJdbiProvider(app)
         def types = app.config.griffon?.jdbi?.injectInto ?: ['controller']
-        for(String type : types) {
+        // a map selects how each type is enhanced: [controller: 'direct', service: 'metaclass']
+        Map<String, String> modes = types instanceof Map ? types : types.collectEntries { [it, 'metaclass'] }
+        modes.each { String type, String mode ->
             for(GriffonClass gc : app.artifactManager.getClassesOfType(type)) {
                 if (JdbiContributionHandler.isAssignableFrom(gc.clazz)) continue
-                JdbiEnhancer.enhance(gc.metaClass)
+                if (mode == 'direct') {
+                    JdbiEnhancer.enhanceDirect(gc.metaClass, provider)
+                } else {
+                    JdbiEnhancer.enhance(gc.metaClass, provider)
+                }
             }
         }
     }
 
     Map events = [
+        NewInstance: { klass, type, instance ->
+            if (!(instance instanceof JdbiContributionHandler)) return
+            JdbiProvider provider = JdbiConnector.instance.resolveJdbiProvider(ApplicationHolder.application)
+            if (provider != DefaultJdbiProvider.instance) instance.jdbiProvider = provider
+        },
         LoadAddonsEnd: { app, addons ->
-            if (getConfigValueAsBoolean(app.config, 'griffon.jdbi.connect.onstartup', true)) {
-                JdbiConnector.instance.connect(app)
-            }
+            JdbiConnector.instance.connectOnStartup(app)
         },
         ShutdownStart: { app ->
-            JdbiConnector.instance.disconnect(app)
+            JdbiMetrics.instance.stopPublishing()
+            JdbiConnector.instance.disconnectAll(app)
+            JdbiTracer.instance.shutdown()
         }
     ]
 }
@@ -86,6 +86,155 @@ The following list enumerates all the variants of the injected method
  * `<R> R withJdbi(CallableWithArgs<R> stmts)`
  * `<R> R withJdbi(String databaseName, Closure<R> stmts)`
  * `<R> R withJdbi(String databaseName, CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiHandle(Closure<R> stmts)`
+ * `<R> R withJdbiHandle(CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiHandle(String databaseName, Closure<R> stmts)`
+ * `<R> R withJdbiHandle(String databaseName, CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiTransaction(Closure<R> stmts)`
+ * `<R> R withJdbiTransaction(CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiTransaction(String databaseName, Closure<R> stmts)`
+ * `<R> R withJdbiTransaction(String databaseName, CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiTransaction(String databaseName, TransactionIsolationLevel isolation, Closure<R> stmts)`
+ * `<R> R withJdbiTransaction(String databaseName, TransactionIsolationLevel isolation, CallableWithArgs<R> stmts)`
+ * `<R> JdbiFuture<R> withJdbiAsync(Closure<R> stmts)`
+ * `<R> JdbiFuture<R> withJdbiAsync(CallableWithArgs<R> stmts)`
+ * `<R> JdbiFuture<R> withJdbiAsync(String databaseName, Closure<R> stmts)`
+ * `<R> JdbiFuture<R> withJdbiAsync(String databaseName, CallableWithArgs<R> stmts)`
+ * `JdbiBatchResult withJdbiBatch(String sql, Iterable rows, int chunkSize)`
+ * `JdbiBatchResult withJdbiBatch(String sql, Iterable rows, int chunkSize, Closure progress)`
+ * `JdbiBatchResult withJdbiBatch(String sql, Iterable rows, int chunkSize, CallableWithArgs progress)`
+ * `JdbiBatchResult withJdbiBatch(String databaseName, String sql, Iterable rows, int chunkSize)`
+ * `JdbiBatchResult withJdbiBatch(String databaseName, String sql, Iterable rows, int chunkSize, Closure progress)`
+ * `JdbiBatchResult withJdbiBatch(String databaseName, String sql, Iterable rows, int chunkSize, CallableWithArgs progress)`
+ * `<R> R withJdbiStream(String sql, Map params, Closure<R> stmts)`
+ * `<R> R withJdbiStream(String sql, Map params, CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiStream(String databaseName, String sql, Map params, Closure<R> stmts)`
+ * `<R> R withJdbiStream(String databaseName, String sql, Map params, CallableWithArgs<R> stmts)`
+ * `JdbiResultStream<Map<String, Object>> openJdbiStream(String sql, Map params)`
+ * `JdbiResultStream<Map<String, Object>> openJdbiStream(String databaseName, String sql, Map params)`
+ * `JdbiColumnarResult fetchJdbiColumns(String sql, Map params, Map columns)`
+ * `JdbiColumnarResult fetchJdbiColumns(String sql, Map params, Map columns, boolean offHeap)`
+ * `JdbiColumnarResult fetchJdbiColumns(String databaseName, String sql, Map params, Map columns)`
+ * `JdbiColumnarResult fetchJdbiColumns(String databaseName, String sql, Map params, Map columns, boolean offHeap)`
+ * `<R> R withJdbiReadOnly(Closure<R> stmts)`
+ * `<R> R withJdbiReadOnly(CallableWithArgs<R> stmts)`
+ * `<R> R withJdbiReadOnly(String groupName, Closure<R> stmts)`
+ * `<R> R withJdbiReadOnly(String groupName, CallableWithArgs<R> stmts)`
+ * `JdbiFanOutResult withJdbiAll(Map<String, ?> stmtsByDatabaseName)`
+ * `JdbiFanOutResult withJdbiAll(Map<String, ?> stmtsByDatabaseName, long timeoutMillis)`
+ * `JdbiFanOutResult withJdbiEach(List<String> databaseNames, Closure stmts)`
+ * `JdbiFanOutResult withJdbiEach(List<String> databaseNames, Closure stmts, long timeoutMillis)`
+ * `JdbiFanOutResult withJdbiEach(List<String> databaseNames, CallableWithArgs stmts)`
+ * `JdbiFanOutResult withJdbiEach(List<String> databaseNames, CallableWithArgs stmts, long timeoutMillis)`
+ * `<T, R> R withJdbiDao(Class<T> daoClass, Closure<R> stmts)`
+ * `<T, R> R withJdbiDao(Class<T> daoClass, CallableWithArgs<R> stmts)`
+ * `<T, R> R withJdbiDao(String databaseName, Class<T> daoClass, Closure<R> stmts)`
+ * `<T, R> R withJdbiDao(String databaseName, Class<T> daoClass, CallableWithArgs<R> stmts)`
+ * `<T> T getJdbiDao(Class<T> daoClass)`
+ * `<T> T getJdbiDao(String databaseName, Class<T> daoClass)`
+ * `JdbiWriteBehind getJdbiWriteBehind()`
+ * `JdbiWriteBehind getJdbiWriteBehind(String databaseName)`
+
+`withJdbiHandle` and `withJdbiTransaction` give you access to a single
+`org.skife.jdbi.v2.Handle` that is used for all statements inside the closure,
+thus a single connection is taken from the pool. The handle is bound to the
+current thread, nested calls on the same database reuse it; nested transactions
+join the outer one. `withJdbiTransaction` commits when the closure returns and
+rolls back if it throws an exception
+
+    withJdbiTransaction('internal') { databaseName, handle ->
+        handle.execute('update accounts set balance = balance - 10 where id = ?', 1)
+        handle.execute('update accounts set balance = balance + 10 where id = ?', 2)
+    }
+
+`withJdbiAsync` runs the closure outside of the UI thread and returns
+immediately with a `griffon.plugins.jdbi.JdbiFuture`, a `java.util.concurrent.Future`
+that can be cancelled and accepts completion callbacks. Callbacks receive
+the result and the failure (one of them is always `null`); they are executed
+inside the UI thread by default
+
+    withJdbiAsync('internal') { databaseName, dbi ->
+        dbi.withHandle({ h -> h.select('select * from people') } as HandleCallback)
+    }.whenComplete { result, failure ->
+        if (failure) model.status = failure.message
+        else model.people = result
+    }
+
+Each database gets its own bounded pool of threads. When both the pool and its
+queue are full `withJdbiAsync` fails right away with a `RejectedExecutionException`.
+Set `saturationPolicy = 'callerRuns'` to have the caller run the statements itself
+instead, slowing down producers; beware that the caller is usually the UI thread.
+These settings can be changed per database in `DataSource.groovy`
+
+    dataSource {
+        jdbi {
+            async {
+                threads = 4
+                queueSize = 64
+                saturationPolicy = 'abort' // or 'callerRuns'
+                callbacksInsideUI = true
+            }
+        }
+    }
+
+`withJdbiBatch` sends rows to the database using JDBC batching, `chunkSize`
+rows at a time. Rows are read lazily from the given `Iterable`, thus large
+sources (a file reader, a cursor) are never loaded in memory at once. Each row
+may be a `Map` (bound by name), a `List` or an array (bound by position), or a
+bean (bound by property name). Every chunk is committed on its own; a failing
+chunk is rolled back and recorded while the remaining chunks carry on. When
+called inside `withJdbiTransaction` chunks join the enclosing transaction
+instead and the first failure is rethrown. The optional progress callback runs
+after each chunk, receiving the database name, the chunk and the number of rows
+processed so far
+
+    JdbiBatchResult result = withJdbiBatch('internal',
+        'insert into people (id, name) values (:id, :name)', peopleReader, 1000) { databaseName, chunk, rows ->
+        execInsideUIAsync { model.imported = rows }
+    }
+    result.failures.each { chunk -> log.error("rows ${chunk.offset}..${chunk.offset + chunk.size} failed", chunk.failure) }
+
+`withJdbiStream` and `openJdbiStream` read query results lazily through a
+`griffon.plugins.jdbi.JdbiResultStream`, an `Iterator` over rows (as maps) that
+is fetched from the driver in blocks, thus memory use stays flat regardless of
+the size of the result. `withJdbiStream` closes the stream when the closure
+returns or fails, even if not all rows were read
+
+    withJdbiStream('internal', 'select * from people where age > :age', [age: 21]) { databaseName, rows ->
+        rows.each { row -> writer.writeNext(row.values() as String[]) }
+    }
+
+`openJdbiStream` returns the stream instead, holding a connection until the
+last row is read, reading fails, or `close()` is called. Until then it counts
+as a call in flight: it holds a bulkhead permit and disconnects wait for it. The fetch size may be
+set per database in `DataSource.groovy` (MySQL requires `Integer.MIN_VALUE` to
+stream rows)
+
+    dataSource {
+        jdbi {
+            stream {
+                fetchSize = 1000
+            }
+        }
+    }
+
+`fetchJdbiColumns` reads numeric columns of a query into primitive arrays, one
+per column, for code that works on whole columns such as charts or statistics.
+Columns are given as an ordered map of column label to type, one of `long`,
+`double` or `int`; values are copied straight from the driver into the arrays,
+no object is created per row. SQL `NULL`s are read as `NaN` in `double` columns
+and as `0` otherwise
+
+    def result = fetchJdbiColumns('select time, price from ticks where symbol = :symbol',
+        [symbol: 'ACME'], [time: 'long', price: 'double'])
+    long[] times = result.getLongs('time')
+    double[] prices = result['price']
+
+Pass `true` as the last argument to store columns in direct `ByteBuffer`s
+(native byte order) instead, keeping very large results out of the Java heap;
+read them with `result.getBuffer('price').asDoubleBuffer()`. The query uses the
+stream fetch size; arrays start with room for `columnar.initialCapacity` rows
+(1024 by default) and double in size as needed.
 
 These methods are also accessible to any component through the singleton
 `griffon.plugins.jdbi.JdbiEnhancer`. You can inject these methods to
@@ -103,6 +252,32 @@ The preferred way to mark a class for method injection is by annotating it with
 `griffon.plugins.jdbi.JdbiContributionHandler` interface and default
 behavior that fulfills the contract.
 
+### JdbiRow AST Transformation
+
+Classes annotated with `@griffon.plugins.jdbi.JdbiRow` get a row mapper
+generated at compile time, both in Groovy and, through the lombok handlers, in
+Java. Query results are mapped with `mapTo`, no mapper has to be registered as
+every `DBI` created by this plugin already knows about `@JdbiRow` classes
+
+    @JdbiRow
+    class Person {
+        long id
+        String firstName
+        Integer age
+    }
+
+    withJdbi { dsName, dbi ->
+        dbi.withHandle({ h -> h.createQuery('select * from people').mapTo(Person).list() } as HandleCallback)
+    }
+
+Every non static, non final and non transient field is mapped to the column of
+the same name, ignoring case and underscores (`first_name` fills `firstName`).
+Columns are resolved once per result set, fields are then read with the typed
+`ResultSet` getter (`getLong`, `getString`, ...) and assigned directly, without
+reflection or boxing. Wrapper fields such as `Integer` are set to `null` for SQL
+`NULL`; fields of other types are read with `getObject` and cast. Fields without
+a matching column are left untouched. The class needs a no-args constructor.
+
 ### Dynamic Method Injection
 
 Dynamic methods will be added to controllers by default. You can
@@ -113,14 +288,281 @@ change this setting by adding a configuration flag in `griffon-app/conf/Config.g
 Dynamic method injection will be skipped for classes implementing
 `griffon.plugins.jdbi.JdbiContributionHandler`.
 
+Methods are injected as closures by default. Using a map instead of a list lets
+each artifact type choose how its methods are dispatched
+
+    griffon.jdbi.injectInto = [controller: 'direct', service: 'metaclass']
+
+`direct` registers meta methods that call the `JdbiProvider` without creating
+closures or going through reflection, and is noticeably cheaper for classes that
+call `withJdbi` often. `metaclass` keeps the closure based injection. Classes that
+do not have an `ExpandoMetaClass` fall back to `metaclass`.
+
 ### Events
 
 The following events will be triggered by this addon
 
  * JdbiConnectStart[dataSourceName, datasource] - triggered before connecting to the database
- * JdbiConnectEnd[dataSourceName, dbi] - triggered after connecting to the database
+ * JdbiConnectEnd[dataSourceName, datasource, connectTime, warmUp] - triggered after connecting to the database.
+   `connectTime` is the number of milliseconds the connection (including `BootstrapJdbi.init` and warm-up) took;
+   `warmUp` is a `griffon.plugins.jdbi.JdbiWarmUp.Result`, or `null` when warm-up is disabled
  * JdbiDisconnectStart[dataSourceName] - triggered before disconnecting from the database
  * JdbiDisconnectEnd[dataSourceName] - triggered after disconnecting from the database
+ * JdbiReconnectStart[dataSourceName, config] - triggered before building the new pool of a database being reconnected
+ * JdbiReconnectEnd[dataSourceName, datasource, reconnectTime, warmUp] - triggered once the new pool serves all calls
+   and the previous one is closed
+ * JdbiHealthCheckFailed[dataSourceName, exception] - triggered when the health prober cannot obtain or validate a connection
+ * JdbiBulkheadRejected[dataSourceName, exception] - triggered when the bulkhead of a database rejects a call
+ * JdbiMetrics[snapshots] - triggered periodically when metrics publishing is enabled
+ * JdbiWriteBehindMetrics[snapshots] - triggered along with `JdbiMetrics` when any database has a write-behind queue
+ * JdbiVirtualThreadPinned[threadName, duration] - triggered when a virtual thread is pinned
+   while running `VirtualThreadJdbiProvider`
+
+### Metrics
+
+The plugin can keep track of how many times each database is used, how many
+calls fail, how many calls are in flight and how long they take. Metrics are
+disabled by default, enable them in `Config.groovy`
+
+    griffon.jdbi.metrics.enabled = true
+    griffon.jdbi.metrics.publishInterval = 60000 // milliseconds, 0 disables publishing
+
+Metrics can be read at any time with `JdbiMetrics.instance.snapshots`, a map of
+`JdbiMetrics.Snapshot` keyed by database name. Each snapshot contains the number
+of calls, errors, calls in flight and the mean, p50, p90, p99 and max latency
+(in microseconds) of `withJdbi`, `withJdbiHandle` and `withJdbiTransaction` bodies.
+When a publish interval is set a `JdbiMetrics[snapshots]` event is triggered
+periodically.
+
+### Tracing
+
+A sample of `withJdbi` and `withJdbiHandle` calls can be traced back to the
+code that made them. For each sampled call a span records the datasource, the
+calling application frame (for example
+`sample.SampleController.list(SampleController.groovy:12)`), the thread, the
+duration and whether the call succeeded. Calls nested in a sampled call are
+always traced as its children. Every statement executed inside a sampled call
+carries the span id as the `jdbi.span` statement attribute. When `sqlComment`
+is enabled it is also prepended as a SQL comment, so that database side logs can
+be correlated with the spans. As this makes the text of every traced statement
+unique, it defeats prepared statement caching in the pool and the driver, thus
+it is disabled by default
+
+    /* jdbi span=3f9a0c2e6b1d4e77 ds=default caller=sample.SampleController.list(SampleController.groovy:12) */ select * from people
+
+Tracing is disabled by default, enable it in `Config.groovy`
+
+    griffon.jdbi.tracing.enabled = true
+    griffon.jdbi.tracing.sampleRate = 0.01   // fraction of top level calls traced
+    griffon.jdbi.tracing.sqlComment = false
+    griffon.jdbi.tracing.sink = 'ringBuffer' // 'jsonFile', or a JdbiSpanSink class or instance
+    griffon.jdbi.tracing.ringBuffer.size = 1024
+    griffon.jdbi.tracing.jsonFile.path = 'jdbi-spans.json'
+
+The ring buffer keeps the latest spans in memory, read them with
+`JdbiTracer.instance.sink.spans`. The JSON file sink appends one span per line
+from a background thread and drops spans rather than block callers when it
+falls behind. The caller is found by walking the stack, which only happens for
+sampled calls.
+
+### Statement Timing
+
+Every statement executed through a `DBI` created by this plugin is timed.
+Timings are aggregated per SQL shape, that is, the statement text with literal
+values replaced by `?`, `in (...)` lists reduced to `in (?)`, comments dropped
+and whitespace collapsed, so that `select * from people where id = 1` and
+`select * from people where id = 2` are accounted together. Statements slower than a threshold are logged as warnings on
+the `griffon.plugins.jdbi.SlowQueries` logger. Timing can be configured per
+database in `DataSource.groovy`
+
+    dataSource {
+        jdbi {
+            timing {
+                enabled = true
+                slowQueryThreshold = 1000 // milliseconds, 0 disables the slow query log
+                maxStatements = 500       // distinct shapes kept, the rest are grouped as '<other>'
+            }
+        }
+    }
+
+Collected timings are available through `JdbiTimingCollector.get(databaseName)`,
+for example `getSlowest(10)` and `getMostCalled(10)` return the top ten
+statements by maximum latency and by number of executions.
+
+### Statement Caching
+
+Statement parsing and SQL templates can be cached per database. When the
+statement cache is enabled, each distinct statement is parsed for named
+parameters only once and kept in a bounded cache that is looked up without
+locking and evicts the least recently used statements. Prepared statement
+caching of the JDBC driver, when it has one, is switched on in the connection
+url (e.g. `cachePrepStmts=true` for MySQL). Externalized SQL templates are
+looked up as `<path>/<name>.sql` in the classpath, read once and cached
+
+    dataSource {
+        jdbi {
+            statementCache {
+                enabled = true
+                size = 256 // parsed statements kept
+            }
+            templates {
+                path = 'sql' // handle.createQuery('people.findAll') reads sql/people/findAll.sql
+            }
+        }
+    }
+
+Hit and miss counters are available through
+`JdbiCachingStatementRewriter.get(databaseName)` and
+`JdbiTemplateStatementLocator.get(databaseName)`.
+
+### SQL Object DAOs
+
+JDBI SQL Object DAOs are created once per database and class and cached, so
+that proxy creation and annotation parsing are not repeated on every call
+
+    interface PeopleDao {
+        @SqlQuery('select name from people where id = :id')
+        String findNameById(@Bind('id') long id)
+    }
+
+    withJdbiDao(PeopleDao) { databaseName, dao -> dao.findNameById(1) }
+    PeopleDao dao = getJdbiDao('internal', PeopleDao)
+
+DAOs are on-demand, each method call obtains and releases its own handle.
+`withJdbiDao` runs like `withJdbi` (bulkheads, metrics and tracing apply),
+while `getJdbiDao` returns the cached DAO itself, so that its calls cost no
+more than those of a plain JDBI DAO; they are not held back by bulkheads nor
+waited for when disconnecting. Cached DAOs are dropped when the database is
+disconnected or reconnected, thus a DAO obtained with `getJdbiDao` should be
+fetched again where it is used rather than kept, the lookup is cheap. DAOs listed in
+`DataSource.groovy` are created while connecting, before the first call
+
+    dataSource {
+        jdbi {
+            daos = [com.acme.PeopleDao, 'com.acme.OrdersDao']
+        }
+    }
+
+### Read Replicas
+
+Databases may be arranged in groups made of a primary and any number of read
+replicas. Groups are defined in `DataSource.groovy` next to the datasources
+they refer to
+
+    dataSourceGroups {
+        people {
+            primary = 'default'
+            replicas = ['replica1', 'replica2']
+            balance = 'leastInFlight' // or 'roundRobin'
+            quarantine = 30000        // milliseconds a failing replica is left out
+        }
+    }
+
+`withJdbiReadOnly('people') { databaseName, dbi -> ... }` runs the closure on
+one of the replicas, picking the one with the fewest calls in flight or taking
+turns. The closure receives the name of the chosen database. A replica that
+fails to provide a connection is taken out of rotation for the quarantine period
+and the call is attempted once more on another replica. Reads fall back to the
+primary when no replica is available, and always go to the primary when they
+happen inside a `withJdbiTransaction` on it. A name that is not configured as a
+group simply refers to the database of the same name.
+
+### Query Cache
+
+`griffon.plugins.jdbi.CachingJdbiProvider` caches the results of queries that
+are run again and again, such as reference data. Select it in `Config.groovy`
+
+    jdbiProvider = griffon.plugins.jdbi.CachingJdbiProvider
+
+Queries run through `cachedQuery(databaseName, sql, params)` are cached by SQL
+and parameters; the resulting rows are unmodifiable and may be shared freely
+between threads, and lookups take no lock. Writes run through `update(databaseName, sql, params)`
+invalidate every cached query that reads from the table being written, once
+the enclosing transaction, if any, is over. Queries run inside a transaction
+bypass the cache, so that uncommitted rows are never shared. Writes
+made by other means (`withJdbi`, other applications) are not seen by the cache,
+call `invalidate(databaseName, tables)` or rely on the time to live instead
+
+    CachingJdbiProvider provider = app.config.jdbiProvider
+    List countries = provider.cachedQuery('select * from countries where region = :region', [region: 'EU'])
+    provider.update('insert into countries (code, region) values (:code, :region)', [code: 'HR', region: 'EU'])
+
+Size and time to live are configured per database in `DataSource.groovy`
+
+    dataSource {
+        jdbi {
+            queryCache {
+                maxEntries = 1000 // roughly the least recently used entries are evicted first
+                ttl = 60000       // milliseconds
+            }
+        }
+    }
+
+`getQueryCache(databaseName)` reports hits, misses, the hit ratio, evictions,
+expirations and invalidations.
+
+### Sharding
+
+`griffon.plugins.jdbi.ShardedJdbiProvider` routes statements to one of several
+identical databases according to a shard key. Select it in `Config.groovy`
+
+    jdbiProvider = griffon.plugins.jdbi.ShardedJdbiProvider
+
+and list the shards in `DataSource.groovy`
+
+    shards {
+        dataSources = ['tenants0', 'tenants1', 'tenants2']
+        strategy = 'consistentHash' // or 'modulo', 'range'
+        virtualNodes = 128          // consistentHash only
+        // ranges = [100000, 200000] // range only, first key of every shard but the first
+    }
+
+The provider resolves keys (`resolveShard(key)`) without allocating when given
+a `long`, runs statements on the shard that holds a key, and runs statements on
+all shards in parallel, collecting the results by shard name
+
+    ShardedJdbiProvider shards = app.config.jdbiProvider
+    shards.withShard(tenantId) { databaseName, dbi -> ... }
+    Map perShard = shards.withAllShards { databaseName, dbi -> ... }
+    List all = perShard.values().flatten()
+
+`withAllShards` runs on the async pool of each database (see
+`withJdbiAsync`). Custom strategies may be plugged in by extending
+`griffon.plugins.jdbi.JdbiShardStrategy` and using the
+`ShardedJdbiProvider(String[], JdbiShardStrategy)` constructor.
+
+### Virtual Threads
+
+Long running queries block the calling thread for as long as the database takes
+to answer. `griffon.plugins.jdbi.VirtualThreadJdbiProvider` starts
+`withJdbiAsync` bodies on virtual threads, so platform callers (the UI thread
+for instance) are not held at all and thousands of pending calls cost no more
+than their stacks. `withJdbi` and `withJdbiHandle` bodies run in place on the
+calling thread, which waits for them in any case. On JVMs without virtual
+threads `withJdbiAsync` uses the async executor of the database, as the default
+provider does. Select it in `Config.groovy`
+
+    jdbiProvider = griffon.plugins.jdbi.VirtualThreadJdbiProvider
+
+The configured provider is used for dynamic method injection and is set on
+every new artifact instance annotated with `@JdbiAware`.
+
+The number of bodies that run concurrently is capped per database by a
+semaphore sized to the connection pool (`pool.maxActive`, 8 if not set), so
+that thousands of virtual threads do not pile up on the pool. The limit can be
+set explicitly with `jdbi.virtualThreads.permits` in `DataSource.groovy`.
+Nested calls on the same database run under the permit of the outermost call,
+while a nested call on another database takes a permit of its own.
+
+JDBC drivers and pools often block inside `synchronized` sections, which pins
+the virtual thread to its carrier. When running on a JVM with Flight Recorder
+streaming the plugin listens to `jdk.VirtualThreadPinned` events, logs a warning
+for every pinning longer than the threshold and triggers a
+`JdbiVirtualThreadPinned[threadName, duration]` event. These are the settings
+in `Config.groovy`
+
+    griffon.jdbi.virtualThreads.pinning.report = true
+    griffon.jdbi.virtualThreads.pinning.threshold = 20 // milliseconds
 
 ### Connect at Startup
 
@@ -130,6 +572,197 @@ behavior is not desired then specify the following configuration flag in
 
     griffon.jdbi.connect.onstartup = false
 
+Additional databases may be connected at startup too by supplying a list of
+names instead of a boolean. These databases are connected in parallel using a
+bounded pool of threads (4 by default); startup only waits for the databases
+listed in `griffon.jdbi.connect.required` (`['default']` by default), the rest
+finish connecting in the background
+
+    griffon.jdbi.connect.onstartup = ['default', 'reports', 'internal']
+    griffon.jdbi.connect.required = ['default']
+    griffon.jdbi.connect.threads = 3
+
+Databases not connected at startup are connected on first use. Concurrent
+requests for a database that is not yet connected share a single connection
+attempt.
+
+### Warm-up and Health Checks
+
+Right after a database is connected (and after `BootstrapJdbi.init` ran) the
+plugin can open a number of pooled connections in parallel, validate them and
+run a few statements on each, so that the first real queries do not pay for
+connection setup nor for the warm-up of the driver. A background prober may
+also validate a connection periodically and top up the pool to its minimum
+number of idle connections. Both are configured per database in `DataSource.groovy`
+
+    dataSource {
+        pool {
+            minIdle = 2
+        }
+        jdbi {
+            warmUp {
+                connections = 4                 // 0 disables warm-up
+                validationQuery = 'select 1'    // defaults to pool.validationQuery, else Connection.isValid()
+                statements = ['select * from countries']
+                timeout = 30                    // seconds
+            }
+            healthCheck {
+                interval = 30000 // milliseconds, 0 disables the prober
+                minIdle = 2      // defaults to pool.minIdle
+            }
+        }
+    }
+
+The prober looks for the pool behind the `DataSource` (the `DataSource`
+itself, its `getPool()`, or the commons-pool `ObjectPool` held by the
+`PoolingDataSource` or `BasicDataSource` of commons-dbcp). Missing idle connections are created with
+`addObject()`, without borrowing any, and never past the `maxActive` of the
+pool. Pools that cannot be inspected or topped up that way are only validated.
+
+### Parallel Fan-out
+
+Calling `withJdbi` on several databases one after the other adds up their
+latencies. `withJdbiAll` runs a body per database in parallel and waits for all
+of them, while `withJdbiEach` runs the same body on every database listed
+
+    def dashboard = withJdbiAll([
+        sales:     { dsName, dbi -> dbi.withHandle { it.select('select * from totals') } },
+        inventory: { dsName, dbi -> dbi.withHandle { it.select('select * from stock') } }
+    ], 2000)
+    def counts = withJdbiEach(['eu', 'us', 'asia']) { dsName, dbi ->
+        dbi.withHandle { it.createQuery('select count(*) from orders').map(IntegerMapper.FIRST).first() }
+    }
+
+Both return a `griffon.plugins.jdbi.JdbiFanOutResult` holding the results and the
+failures of every branch keyed by database name; `result['sales']` returns a result
+or rethrows the failure of that branch. A failing branch does not stop the others.
+When a timeout (in milliseconds) is given, it applies to every branch on its own,
+counted from when the branch starts running, so that a slow branch does not eat
+into the time of the others. Branches still running once their timeout elapses,
+or not started within it, are cancelled and reported as failed with a
+`java.util.concurrent.TimeoutException`. Branches run on the asynchronous pool
+of their database (see `jdbi.async`), thus the pool size and the bulkhead of
+every database still apply. Each branch runs on its own thread, never on the
+caller's whatever `saturationPolicy` says (a saturated pool fails the branch),
+and does not take part in a transaction of the caller.
+
+### Bulkheads
+
+A slow database should not take every thread of the application with it. Each
+database may be given a bulkhead that caps the number of `withJdbi` and
+`withJdbiHandle` calls (and therefore the methods built on them) in flight against
+it. Calls over the limit wait in a bounded queue; calls that find the queue full,
+or that do not get a permit in time, fail fast with a
+`griffon.plugins.jdbi.JdbiBulkheadRejectedException` and trigger a
+`JdbiBulkheadRejected` event. Nested calls on the same database reuse the permit
+of the outermost one. Bulkheads are configured per database in `DataSource.groovy`
+
+    dataSources {
+        reports {
+            jdbi {
+                bulkhead {
+                    maxConcurrent = 4 // 0 disables the bulkhead (default)
+                    maxQueue = 8      // calls allowed to wait for a permit, defaults to 0
+                    timeout = 500     // milliseconds to wait for a permit, defaults to 0
+                    adaptive {
+                        enabled = true
+                        minLimit = 1
+                        maxLimit = 8     // defaults to maxConcurrent
+                        tolerance = 2.0
+                        backoff = 0.9
+                    }
+                }
+            }
+        }
+    }
+
+In adaptive mode `maxConcurrent` is the initial limit, which then follows the
+latency of the database. While the average latency stays within `tolerance` times
+the lowest average seen recently, the limit grows by one for every `limit` calls
+that complete with the limit reached; once it gets slower than that the limit is
+multiplied by `backoff`, at most once per `limit` calls. The current state of a bulkhead is available from
+`JdbiHolder.instance.getBulkhead('reports')` (`limit`, `inFlight`, `queued` and
+`rejected`). Streams returned by `openJdbiStream` hold a permit until they are
+closed, unless opened inside another call, whose permit then covers them.
+
+### Write-behind
+
+Frequent small updates, such as counters or last seen timestamps, can be queued
+instead of paying a round trip each. A database may be given a bounded
+write-behind queue in `DataSource.groovy`
+
+    dataSources {
+        internal {
+            jdbi {
+                writeBehind {
+                    maxPending = 10000  // 0 disables the queue (default)
+                    batchSize = 500     // writes per JDBC batch
+                    flushInterval = 1000 // milliseconds
+                    maxRetries = 3      // per write, once a batch fails
+                }
+            }
+        }
+    }
+
+Each write is a statement, a key and the parameters of the statement. While a
+write is pending, writing the same statement and key again replaces its
+parameters, thus only the latest value reaches the database; statements should
+be upserts
+
+    def queue = getJdbiWriteBehind('internal')
+    queue.offer('update users set last_seen = :lastSeen where id = :id', user.id, [id: user.id, lastSeen: now])
+
+`offer` never blocks and returns `false` when `maxPending` writes are waiting;
+`offer(sql, key, params, timeout, unit)` and `put(sql, key, params)` wait for
+room instead. A background thread writes pending writes in JDBC batches of
+`batchSize`, one transaction each, as soon as that many are waiting or every
+`flushInterval` milliseconds otherwise; `flush()` does so on the calling thread.
+A failed batch is rolled back and queued again (unless newer values arrived)
+up to `maxRetries` times before its writes are dropped and logged; failed writes
+that no longer fit because new ones filled the queue meanwhile are dropped the
+same way, oldest first, so the queue never holds more than `maxPending`. Queue depth,
+coalesced and rejected writes and flush latencies are available from
+`queue.snapshot`, and are published as a `JdbiWriteBehindMetrics` event when
+metrics publishing is enabled.
+
+### Reconfiguration
+
+The pool of a connected database can be replaced while the application is running,
+for example to resize it under load or to point it to another server
+
+    JdbiConnector.instance.reconnect(app, 'reports', [pool: [maxActive: 50]])
+
+The given settings are merged over those of `DataSource.groovy` and a new pool is
+built and warmed up next to the current one (it is registered with the datasource
+plugin under an internal name such as `reports@1`). The `DBI` is then swapped in a
+single step: calls starting afterwards use the new pool while calls already in
+flight finish on the old one, which is closed once they are done or once
+`griffon.jdbi.shutdown.gracePeriod` elapses. Bulkhead, statement cache, warm-up,
+health check, async and write-behind settings are taken from the new settings
+too; the write-behind queue is replaced by a new one once pending writes are
+flushed, thus fetch it with `getJdbiWriteBehind` rather than keeping it around.
+`BootstrapJdbi` is not run again. If the new pool cannot be built the current one
+keeps serving and the exception is rethrown. The new settings stay in effect until
+the database is disconnected.
+
+### Shutdown
+
+When the application shuts down every connected database is disconnected in
+parallel. From that moment on new `withJdbi` calls (and every other injected
+method) fail with an `IllegalStateException`, and no new connection is made.
+Calls already in flight get a grace period to finish before `BootstrapJdbi.destroy`
+runs and the pool is closed. Writes pending in a write-behind queue are flushed
+in between, once those calls are done; the whole shutdown is bounded by a hard deadline,
+past which databases that are still disconnecting are left behind. Both are set in
+`griffon-app/conf/Config.groovy`
+
+    griffon.jdbi.shutdown.gracePeriod = 5000 // milliseconds, per database
+    griffon.jdbi.shutdown.timeout = 10000    // milliseconds, for all databases
+
+Disconnecting a single database with `JdbiConnector.instance.disconnect(app, 'reports')`
+drains it the same way, using the same grace period, and accepts calls again once
+it is done. Open streams are waited for too.
+
 ### Example
 
 A trivial sample application can be found at [https://github.com/aalmiray/griffon_sample_apps/tree/master/persistence/jdbi][3]
@@ -148,6 +781,7 @@ The contract for this interface looks like this
         <R> R withJdbi(CallableWithArgs<R> callable);
         <R> R withJdbi(String databaseName, Closure<R> closure);
         <R> R withJdbi(String databaseName, CallableWithArgs<R> callable);
+        // plus all withJdbiHandle, withJdbiTransaction, withJdbiAsync, withJdbiBatch, withJdbiStream, fetchJdbiColumns, withJdbiReadOnly, withJdbiAll, withJdbiEach, withJdbiDao, getJdbiDao and getJdbiWriteBehind variants
     }
 
 It's up to you define how these methods need to be implemented for your tests.
@@ -159,6 +793,7 @@ arguments it receives
         public <R> R withJdbi(CallableWithArgs<R> callable) { null }
         public <R> R withJdbi(String databaseName, Closure<R> closure) { null }
         public <R> R withJdbi(String databaseName, CallableWithArgs<R> callable) { null }
+        // remaining variants return null too
     }
 
 This implementation may be used in the following way
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi.benchmarks;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+/**
+ * Shared setup: an in-memory H2 database with a small table, registered in
+ * {@code JdbiHolder} under {@code NAME} so that no Griffon application is
+ * needed.
+ *
+ * @author Andres Almiray
+ */
+final class BenchmarkDatabase {
+    static final String NAME = "benchmark";
+    static final int ROWS = 1000;
+
+    private BenchmarkDatabase() {}
+
+    static JdbcConnectionPool createPool() {
+        JdbcConnectionPool pool = JdbcConnectionPool.create("jdbc:h2:mem:" + NAME + ";DB_CLOSE_DELAY=-1", "sa", "");
+        pool.setMaxConnections(64);
+        return pool;
+    }
+
+    static DBI createJdbi(JdbcConnectionPool pool) {
+        DBI dbi = new DBI(pool);
+        Handle handle = dbi.open();
+        try {
+            handle.execute("drop table if exists people");
+            handle.execute("create table people (id int primary key, name varchar(64), age int)");
+            for (int i = 0; i < ROWS; i++) {
+                handle.execute("insert into people (id, name, age) values (?, ?, ?)", i, "person" + i, 20 + i % 50);
+            }
+        } finally {
+            handle.close();
+        }
+        return dbi;
+    }
+}
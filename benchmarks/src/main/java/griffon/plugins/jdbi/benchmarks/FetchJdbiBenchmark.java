@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi.benchmarks;
+
+import griffon.plugins.jdbi.JdbiHolder;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code JdbiHolder.fetchJdbi} for a connected datasource as
+ * the number of threads looking it up grows.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FetchJdbiBenchmark {
+    private JdbcConnectionPool pool;
+
+    @Setup
+    public void setup() {
+        pool = BenchmarkDatabase.createPool();
+        JdbiHolder.getInstance().setJdbi(BenchmarkDatabase.NAME, new DBI(pool));
+    }
+
+    @TearDown
+    public void tearDown() {
+        JdbiHolder.getInstance().disconnectJdbi(BenchmarkDatabase.NAME);
+        pool.dispose();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DBI fetch01Thread() {
+        return JdbiHolder.getInstance().fetchJdbi(BenchmarkDatabase.NAME);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public DBI fetch04Threads() {
+        return JdbiHolder.getInstance().fetchJdbi(BenchmarkDatabase.NAME);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public DBI fetch16Threads() {
+        return JdbiHolder.getInstance().fetchJdbi(BenchmarkDatabase.NAME);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public DBI fetch64Threads() {
+        return JdbiHolder.getInstance().fetchJdbi(BenchmarkDatabase.NAME);
+    }
+}
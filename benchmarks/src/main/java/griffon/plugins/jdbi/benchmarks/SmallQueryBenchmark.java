@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi.benchmarks;
+
+import griffon.plugins.jdbi.DefaultJdbiProvider;
+import griffon.plugins.jdbi.JdbiHolder;
+import griffon.util.CallableWithArgs;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of small queries against an in-memory H2 database, through
+ * the plugin and through plain JDBC as a baseline.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SmallQueryBenchmark {
+    private JdbcConnectionPool pool;
+
+    @Setup
+    public void setup() {
+        pool = BenchmarkDatabase.createPool();
+        JdbiHolder.getInstance().setJdbi(BenchmarkDatabase.NAME, BenchmarkDatabase.createJdbi(pool));
+    }
+
+    @TearDown
+    public void tearDown() {
+        JdbiHolder.getInstance().disconnectJdbi(BenchmarkDatabase.NAME);
+        pool.dispose();
+    }
+
+    @Benchmark
+    public String plainJdbcSelectById() throws SQLException {
+        Connection connection = pool.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement("select name from people where id = ?");
+            try {
+                statement.setInt(1, randomId());
+                ResultSet rs = statement.executeQuery();
+                return rs.next() ? rs.getString(1) : null;
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> withJdbiSelectById() {
+        return DefaultJdbiProvider.getInstance().withJdbi(BenchmarkDatabase.NAME, new CallableWithArgs<Map<String, Object>>() {
+            public Map<String, Object> call(Object[] args) {
+                Handle handle = ((DBI) args[1]).open();
+                try {
+                    return handle.createQuery("select name from people where id = :id").bind("id", randomId()).first();
+                } finally {
+                    handle.close();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public Map<String, Object> withJdbiHandleSelectById() {
+        return DefaultJdbiProvider.getInstance().withJdbiHandle(BenchmarkDatabase.NAME, new CallableWithArgs<Map<String, Object>>() {
+            public Map<String, Object> call(Object[] args) {
+                return ((Handle) args[1]).createQuery("select name from people where id = :id").bind("id", randomId()).first();
+            }
+        });
+    }
+
+    @Benchmark
+    public Integer withJdbiTransactionUpdate() {
+        return DefaultJdbiProvider.getInstance().withJdbiTransaction(BenchmarkDatabase.NAME, new CallableWithArgs<Integer>() {
+            public Integer call(Object[] args) {
+                return ((Handle) args[1]).update("update people set age = age + 1 where id = ?", randomId());
+            }
+        });
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ROWS);
+    }
+}
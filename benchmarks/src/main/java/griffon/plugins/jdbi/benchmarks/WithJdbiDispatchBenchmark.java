@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi.benchmarks;
+
+import griffon.plugins.jdbi.DefaultJdbiProvider;
+import griffon.plugins.jdbi.JdbiContributionAdapter;
+import griffon.plugins.jdbi.JdbiEnhancer;
+import griffon.plugins.jdbi.JdbiHolder;
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import groovy.lang.ExpandoMetaClass;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of dispatching a {@code withJdbi} body that does no work, through
+ * each of the ways the plugin exposes it.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WithJdbiDispatchBenchmark {
+    private JdbcConnectionPool pool;
+    private Closure<Object> closure;
+    private CallableWithArgs<Object> callable;
+    private ExpandoMetaClass enhancedMetaClass;
+    private ExpandoMetaClass directMetaClass;
+    private Target target;
+    private JdbiContributionAdapter injected;
+
+    public static class Target {
+    }
+
+    @Setup
+    public void setup() {
+        pool = BenchmarkDatabase.createPool();
+        JdbiHolder.getInstance().setJdbi(BenchmarkDatabase.NAME, new DBI(pool));
+
+        closure = new Closure<Object>(this) {
+            public Object doCall(String dataSourceName, DBI dbi) {
+                return dbi;
+            }
+        };
+        callable = new CallableWithArgs<Object>() {
+            public Object call(Object[] args) {
+                return args[1];
+            }
+        };
+
+        target = new Target();
+        enhancedMetaClass = new ExpandoMetaClass(Target.class, false, true);
+        JdbiEnhancer.enhance(enhancedMetaClass, DefaultJdbiProvider.getInstance());
+        enhancedMetaClass.initialize();
+        directMetaClass = new ExpandoMetaClass(Target.class, false, true);
+        JdbiEnhancer.enhanceDirect(directMetaClass, DefaultJdbiProvider.getInstance());
+        directMetaClass.initialize();
+
+        // same delegation @JdbiAware generates: a direct call on a provider field
+        injected = new JdbiContributionAdapter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        JdbiHolder.getInstance().disconnectJdbi(BenchmarkDatabase.NAME);
+        pool.dispose();
+    }
+
+    @Benchmark
+    public Object providerWithClosure() {
+        return DefaultJdbiProvider.getInstance().withJdbi(BenchmarkDatabase.NAME, closure);
+    }
+
+    @Benchmark
+    public Object providerWithCallable() {
+        return DefaultJdbiProvider.getInstance().withJdbi(BenchmarkDatabase.NAME, callable);
+    }
+
+    @Benchmark
+    public Object enhancerMetaClassDispatch() {
+        return enhancedMetaClass.invokeMethod(target, "withJdbi", new Object[]{BenchmarkDatabase.NAME, closure});
+    }
+
+    @Benchmark
+    public Object enhancerDirectDispatch() {
+        return directMetaClass.invokeMethod(target, "withJdbi", new Object[]{BenchmarkDatabase.NAME, closure});
+    }
+
+    @Benchmark
+    public Object jdbiAwareDirectCall() {
+        return injected.withJdbi(BenchmarkDatabase.NAME, callable);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.codehaus.groovy.transform.GroovyASTTransformationClass;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Annotates a class whose instances are read from query results. A
+ * {@code ResultSetMapper} is generated at compile time that reads each
+ * column with the typed {@code ResultSet} getter of its field and assigns it
+ * directly, see {@code griffon.plugins.jdbi.JdbiRowMapper}.</p>
+ * <p>All non static, non final and non transient fields are mapped. The
+ * class must have a no-args constructor.</p>
+ *
+ * @author Andres Almiray
+ * @see org.codehaus.griffon.ast.JdbiRowASTTransformation
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@GroovyASTTransformationClass("org.codehaus.griffon.ast.JdbiRowASTTransformation")
+public @interface JdbiRow {
+}
\ No newline at end of file
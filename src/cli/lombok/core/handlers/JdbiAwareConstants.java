@@ -30,11 +30,84 @@ public interface JdbiAwareConstants extends BaseConstants {
     String JDBI_PROVIDER_TYPE = "griffon.plugins.jdbi.JdbiProvider";
     String DEFAULT_JDBI_PROVIDER_TYPE = "griffon.plugins.jdbi.DefaultJdbiProvider";
     String JDBI_CONTRIBUTION_HANDLER_TYPE = "griffon.plugins.jdbi.JdbiContributionHandler";
+    String TRANSACTION_ISOLATION_LEVEL_TYPE = "org.skife.jdbi.v2.TransactionIsolationLevel";
+    String JDBI_FUTURE_TYPE = "griffon.plugins.jdbi.JdbiFuture";
+    String JDBI_BATCH_RESULT_TYPE = "griffon.plugins.jdbi.JdbiBatchResult";
+    String JDBI_RESULT_STREAM_TYPE = "griffon.plugins.jdbi.JdbiResultStream";
+    String JDBI_COLUMNAR_RESULT_TYPE = "griffon.plugins.jdbi.JdbiColumnarResult";
+    String JDBI_WRITE_BEHIND_TYPE = "griffon.plugins.jdbi.JdbiWriteBehind";
+    String JDBI_FAN_OUT_RESULT_TYPE = "griffon.plugins.jdbi.JdbiFanOutResult";
+    String JAVA_LANG_ITERABLE = "java.lang.Iterable";
+    String JAVA_UTIL_MAP = "java.util.Map";
+    String JAVA_UTIL_LIST = "java.util.List";
+    String JAVA_LANG_CLASS = "java.lang.Class";
+    String INT_TYPE = "int";
+    String LONG_TYPE = "long";
+    String BOOLEAN_TYPE = "boolean";
     String JDBI_PROVIDER_FIELD_NAME = "this$JdbiProvider";
     String METHOD_GET_JDBI_PROVIDER = "getJdbiProvider";
     String METHOD_SET_JDBI_PROVIDER = "setJdbiProvider";
     String METHOD_WITH_JDBI = "withJdbi";
+    String METHOD_WITH_JDBI_HANDLE = "withJdbiHandle";
+    String METHOD_WITH_JDBI_TRANSACTION = "withJdbiTransaction";
+    String METHOD_WITH_JDBI_ASYNC = "withJdbiAsync";
+    String METHOD_WITH_JDBI_BATCH = "withJdbiBatch";
+    String METHOD_WITH_JDBI_STREAM = "withJdbiStream";
+    String METHOD_OPEN_JDBI_STREAM = "openJdbiStream";
+    String METHOD_FETCH_JDBI_COLUMNS = "fetchJdbiColumns";
+    String METHOD_WITH_JDBI_READ_ONLY = "withJdbiReadOnly";
+    String METHOD_WITH_JDBI_ALL = "withJdbiAll";
+    String METHOD_WITH_JDBI_EACH = "withJdbiEach";
+    String METHOD_WITH_JDBI_DAO = "withJdbiDao";
+    String METHOD_GET_JDBI_DAO = "getJdbiDao";
+    String METHOD_GET_JDBI_WRITE_BEHIND = "getJdbiWriteBehind";
     String PROVIDER = "provider";
+    String T = "T";
+
+    String JDBI_ROW_MAPPING_TYPE = "griffon.plugins.jdbi.JdbiRowMapping";
+    String JDBI_ROW_MAPPER_TYPE = "griffon.plugins.jdbi.JdbiRowMapper";
+    String JAVA_SQL_RESULT_SET = "java.sql.ResultSet";
+    String JAVA_SQL_SQL_EXCEPTION = "java.sql.SQLException";
+    String METHOD_JDBI_ROW_COLUMNS = "jdbiRowColumns";
+    String METHOD_NEW_JDBI_ROW = "newJdbiRow";
+    String METHOD_READ_JDBI_ROW = "readJdbiRow";
+    String RESULT_SET = "resultSet";
+    String COLUMNS = "columns";
+
+    /**
+     * Field types of {@code @JdbiRow} classes read with a {@code ResultSet} getter:
+     * qualified name, simple name, getter.
+     */
+    String[][] RESULT_SET_GETTERS = new String[][] {
+        {"boolean", "boolean", "getBoolean"},
+        {"byte", "byte", "getByte"},
+        {"short", "short", "getShort"},
+        {"int", "int", "getInt"},
+        {"long", "long", "getLong"},
+        {"float", "float", "getFloat"},
+        {"double", "double", "getDouble"},
+        {"[B", "byte[]", "getBytes"},
+        {"java.lang.String", "String", "getString"},
+        {"java.math.BigDecimal", "BigDecimal", "getBigDecimal"},
+        {"java.sql.Timestamp", "Timestamp", "getTimestamp"}
+    };
+
+    /**
+     * Field types of {@code @JdbiRow} classes read with a static {@code JdbiRowMapper}
+     * helper: qualified name, simple name, helper. Any other type is read with
+     * {@code getObject} and cast.
+     */
+    String[][] JDBI_ROW_MAPPER_GETTERS = new String[][] {
+        {"char", "char", "getChar"},
+        {"java.lang.Boolean", "Boolean", "getBooleanObject"},
+        {"java.lang.Byte", "Byte", "getByteObject"},
+        {"java.lang.Short", "Short", "getShortObject"},
+        {"java.lang.Integer", "Integer", "getIntegerObject"},
+        {"java.lang.Long", "Long", "getLongObject"},
+        {"java.lang.Float", "Float", "getFloatObject"},
+        {"java.lang.Double", "Double", "getDoubleObject"},
+        {"java.lang.Character", "Character", "getCharacterObject"}
+    };
 
     MethodDescriptor[] METHODS = new MethodDescriptor[] {
         MethodDescriptor.method(
@@ -64,6 +137,380 @@ public interface JdbiAwareConstants extends BaseConstants {
             args(
                 type(JAVA_LANG_STRING),
                 type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_HANDLE,
+            args(type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_HANDLE,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_HANDLE,
+            args(type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_HANDLE,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                type(JAVA_LANG_STRING),
+                type(TRANSACTION_ISOLATION_LEVEL_TYPE),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                type(JAVA_LANG_STRING),
+                type(TRANSACTION_ISOLATION_LEVEL_TYPE),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE),
+                type(GROOVY_LANG_CLOSURE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE),
+                type(GROOVY_LANG_CLOSURE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_BATCH_RESULT_TYPE),
+            METHOD_WITH_JDBI_BATCH,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_ITERABLE),
+                type(INT_TYPE),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_RESULT_STREAM_TYPE),
+            METHOD_OPEN_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_RESULT_STREAM_TYPE),
+            METHOD_OPEN_JDBI_STREAM,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_COLUMNAR_RESULT_TYPE),
+            METHOD_FETCH_JDBI_COLUMNS,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(JAVA_UTIL_MAP))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_COLUMNAR_RESULT_TYPE),
+            METHOD_FETCH_JDBI_COLUMNS,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(JAVA_UTIL_MAP),
+                type(BOOLEAN_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_COLUMNAR_RESULT_TYPE),
+            METHOD_FETCH_JDBI_COLUMNS,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(JAVA_UTIL_MAP))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_COLUMNAR_RESULT_TYPE),
+            METHOD_FETCH_JDBI_COLUMNS,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_STRING),
+                type(JAVA_UTIL_MAP),
+                type(JAVA_UTIL_MAP),
+                type(BOOLEAN_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(
+                type(JAVA_LANG_STRING),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_ALL,
+            args(type(JAVA_UTIL_MAP))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_ALL,
+            args(
+                type(JAVA_UTIL_MAP),
+                type(LONG_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_EACH,
+            args(
+                type(JAVA_UTIL_LIST),
+                type(GROOVY_LANG_CLOSURE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_EACH,
+            args(
+                type(JAVA_UTIL_LIST),
+                type(GROOVY_LANG_CLOSURE),
+                type(LONG_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_EACH,
+            args(
+                type(JAVA_UTIL_LIST),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_FAN_OUT_RESULT_TYPE),
+            METHOD_WITH_JDBI_EACH,
+            args(
+                type(JAVA_UTIL_LIST),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS),
+                type(LONG_TYPE))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(T, R),
+            METHOD_WITH_JDBI_DAO,
+            args(
+                type(JAVA_LANG_CLASS, T),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(T, R),
+            METHOD_WITH_JDBI_DAO,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_CLASS, T),
+                type(GROOVY_LANG_CLOSURE, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(T, R),
+            METHOD_WITH_JDBI_DAO,
+            args(
+                type(JAVA_LANG_CLASS, T),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(R),
+            typeParams(T, R),
+            METHOD_WITH_JDBI_DAO,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_CLASS, T),
+                type(GRIFFON_UTIL_CALLABLEWITHARGS, R))
+        ),
+        MethodDescriptor.method(
+            type(T),
+            typeParams(T),
+            METHOD_GET_JDBI_DAO,
+            args(type(JAVA_LANG_CLASS, T))
+        ),
+        MethodDescriptor.method(
+            type(T),
+            typeParams(T),
+            METHOD_GET_JDBI_DAO,
+            args(
+                type(JAVA_LANG_STRING),
+                type(JAVA_LANG_CLASS, T))
+        ),
+        MethodDescriptor.method(
+            type(JDBI_WRITE_BEHIND_TYPE),
+            METHOD_GET_JDBI_WRITE_BEHIND,
+            args()
+        ),
+        MethodDescriptor.method(
+            type(JDBI_WRITE_BEHIND_TYPE),
+            METHOD_GET_JDBI_WRITE_BEHIND,
+            args(type(JAVA_LANG_STRING))
         )
     };
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lombok.core.handlers;
+
+import lombok.ast.Expression;
+import lombok.ast.IField;
+import lombok.ast.IMethod;
+import lombok.ast.IType;
+import lombok.ast.MethodDecl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static lombok.ast.AST.*;
+
+/**
+ * @author Andres Almiray
+ */
+public abstract class JdbiRowHandler<TYPE_TYPE extends IType<? extends IMethod<?, ?, ?, ?>, FIELD_TYPE, ?, ?, ?, ?>, FIELD_TYPE extends IField<?, ?, ?, ?>> extends AbstractHandler<TYPE_TYPE> implements JdbiAwareConstants {
+    protected abstract boolean isTransient(FIELD_TYPE field);
+
+    public void addJdbiRowMethods(final TYPE_TYPE type) {
+        List<FIELD_TYPE> fields = new ArrayList<FIELD_TYPE>();
+        for (FIELD_TYPE field : type.fields()) {
+            if (field.isStatic() || field.isFinal() || isTransient(field) || field.name().contains("$")) continue;
+            fields.add(field);
+        }
+
+        StringBuilder names = new StringBuilder();
+        for (FIELD_TYPE field : fields) {
+            if (names.length() > 0) names.append(',');
+            names.append(field.name());
+        }
+        type.editor().injectMethod(
+            MethodDecl(Type(JAVA_LANG_STRING).withDimensions(1), METHOD_JDBI_ROW_COLUMNS)
+                .makePublic()
+                .withStatement(Return(Call(String(names.toString()), "split").withArgument(String(","))))
+        );
+
+        type.editor().injectMethod(
+            MethodDecl(Type(JDBI_ROW_MAPPING_TYPE), METHOD_NEW_JDBI_ROW)
+                .makePublic()
+                .withStatement(Return(New(Type(type.name()))))
+        );
+
+        MethodDecl readMethod = MethodDecl(Type(VOID), METHOD_READ_JDBI_ROW)
+            .makePublic()
+            .withArgument(Arg(Type(JAVA_SQL_RESULT_SET), RESULT_SET))
+            .withArgument(Arg(Type(INT_TYPE).withDimensions(1), COLUMNS))
+            .withThrownException(Type(JAVA_SQL_SQL_EXCEPTION));
+        for (int i = 0; i < fields.size(); i++) {
+            FIELD_TYPE field = fields.get(i);
+            // if (columns[i] > 0) this.field = resultSet.getXxx(columns[i]);
+            readMethod.withStatement(
+                If(Binary(ArrayRef(Name(COLUMNS), Number(i)), ">", Number(0)))
+                    .Then(Block()
+                        .withStatement(Assign(Field(field.name()), readColumn(field, ArrayRef(Name(COLUMNS), Number(i))))))
+            );
+        }
+        type.editor().injectMethod(readMethod);
+    }
+
+    private Expression<?> readColumn(FIELD_TYPE field, Expression<?> column) {
+        for (String[] getter : RESULT_SET_GETTERS) {
+            if (isOfType(field, getter)) {
+                return Call(Name(RESULT_SET), getter[2]).withArgument(column);
+            }
+        }
+        for (String[] getter : JDBI_ROW_MAPPER_GETTERS) {
+            if (isOfType(field, getter)) {
+                return Call(Name(JDBI_ROW_MAPPER_TYPE), getter[2]).withArgument(Name(RESULT_SET)).withArgument(column);
+            }
+        }
+        return Cast(field.type(), Call(Name(RESULT_SET), "getObject").withArgument(column));
+    }
+
+    private boolean isOfType(FIELD_TYPE field, String[] getter) {
+        // primitive getters are listed with identical qualified and simple names
+        boolean primitive = getter[0].equals(getter[1]);
+        return primitive == field.isPrimitive() && (field.isOfType(getter[0]) || field.isOfType(getter[1]));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lombok.eclipse.handlers;
+
+import griffon.plugins.jdbi.JdbiRow;
+import lombok.core.AnnotationValues;
+import lombok.core.handlers.JdbiAwareConstants;
+import lombok.core.handlers.JdbiRowHandler;
+import lombok.eclipse.EclipseAnnotationHandler;
+import lombok.eclipse.EclipseNode;
+import lombok.eclipse.handlers.ast.EclipseField;
+import lombok.eclipse.handlers.ast.EclipseType;
+import org.eclipse.jdt.internal.compiler.ast.Annotation;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+
+import static lombok.core.util.ErrorMessages.canBeUsedOnClassOnly;
+
+/**
+ * @author Andres Almiray
+ */
+public class HandleJdbiRow extends EclipseAnnotationHandler<JdbiRow> {
+    private final EclipseJdbiRowHandler handler = new EclipseJdbiRowHandler();
+
+    @Override
+    public void handle(AnnotationValues<JdbiRow> annotation, Annotation source, EclipseNode annotationNode) {
+        EclipseType type = EclipseType.typeOf(annotationNode, source);
+        if (type.isAnnotation() || type.isInterface() || type.isEnum()) {
+            annotationNode.addError(canBeUsedOnClassOnly(JdbiRow.class));
+            return;
+        }
+
+        EclipseUtil.addInterface(type.get(), JdbiAwareConstants.JDBI_ROW_MAPPING_TYPE, source);
+        handler.addJdbiRowMethods(type);
+        type.editor().rebuild();
+    }
+
+    private static class EclipseJdbiRowHandler extends JdbiRowHandler<EclipseType, EclipseField> {
+        @Override
+        protected boolean isTransient(EclipseField field) {
+            return (field.get().modifiers & ClassFileConstants.AccTransient) != 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lombok.intellij.processor.clazz;
+
+import com.intellij.psi.*;
+import de.plushnikov.intellij.lombok.psi.LombokLightMethodBuilder;
+import de.plushnikov.intellij.lombok.psi.LombokPsiElementFactory;
+import de.plushnikov.intellij.lombok.util.PsiPrimitiveTypeFactory;
+import griffon.plugins.jdbi.JdbiRow;
+import lombok.core.handlers.JdbiAwareConstants;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * @author Andres Almiray
+ */
+public class JdbiRowProcessor extends AbstractGriffonLombokClassProcessor implements JdbiAwareConstants {
+    public JdbiRowProcessor() {
+        super(JdbiRow.class, PsiMethod.class);
+    }
+
+    protected <Psi extends PsiElement> void processIntern(@NotNull PsiClass psiClass, @NotNull PsiAnnotation psiAnnotation, @NotNull List<Psi> target) {
+        PsiElementFactory psiElementFactory = psiElementFactory(psiClass);
+
+        LombokLightMethodBuilder method = LombokPsiElementFactory.getInstance().createLightMethod(psiClass.getManager(), METHOD_JDBI_ROW_COLUMNS)
+            .withMethodReturnType(psiElementFactory.createTypeFromText(JAVA_LANG_STRING + "[]", psiClass))
+            .withContainingClass(psiClass)
+            .withModifier(PsiModifier.PUBLIC)
+            .withNavigationElement(psiAnnotation);
+        target.add((Psi) method);
+
+        method = LombokPsiElementFactory.getInstance().createLightMethod(psiClass.getManager(), METHOD_NEW_JDBI_ROW)
+            .withMethodReturnType(psiElementFactory.createTypeFromText(JDBI_ROW_MAPPING_TYPE, psiClass))
+            .withContainingClass(psiClass)
+            .withModifier(PsiModifier.PUBLIC)
+            .withNavigationElement(psiAnnotation);
+        target.add((Psi) method);
+
+        method = LombokPsiElementFactory.getInstance().createLightMethod(psiClass.getManager(), METHOD_READ_JDBI_ROW)
+            .withMethodReturnType(PsiPrimitiveTypeFactory.getInstance().getVoidType())
+            .withContainingClass(psiClass)
+            .withParameter(RESULT_SET, psiElementFactory.createTypeFromText(JAVA_SQL_RESULT_SET, psiClass))
+            .withParameter(COLUMNS, psiElementFactory.createTypeFromText(INT_TYPE + "[]", psiClass))
+            .withModifier(PsiModifier.PUBLIC)
+            .withNavigationElement(psiAnnotation);
+        target.add((Psi) method);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lombok.javac.handlers;
+
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+import griffon.plugins.jdbi.JdbiRow;
+import lombok.core.AnnotationValues;
+import lombok.core.handlers.JdbiAwareConstants;
+import lombok.core.handlers.JdbiRowHandler;
+import lombok.javac.JavacAnnotationHandler;
+import lombok.javac.JavacNode;
+import lombok.javac.handlers.ast.JavacField;
+import lombok.javac.handlers.ast.JavacType;
+
+import static lombok.core.util.ErrorMessages.canBeUsedOnClassOnly;
+import static lombok.javac.handlers.JavacHandlerUtil.deleteAnnotationIfNeccessary;
+
+/**
+ * @author Andres Almiray
+ */
+public class HandleJdbiRow extends JavacAnnotationHandler<JdbiRow> {
+    private final JavacJdbiRowHandler handler = new JavacJdbiRowHandler();
+
+    @Override
+    public void handle(final AnnotationValues<JdbiRow> annotation, final JCTree.JCAnnotation source, final JavacNode annotationNode) {
+        deleteAnnotationIfNeccessary(annotationNode, JdbiRow.class);
+
+        JavacType type = JavacType.typeOf(annotationNode, source);
+        if (type.isAnnotation() || type.isInterface() || type.isEnum()) {
+            annotationNode.addError(canBeUsedOnClassOnly(JdbiRow.class));
+            return;
+        }
+
+        JavacUtil.addInterface(type.node(), JdbiAwareConstants.JDBI_ROW_MAPPING_TYPE);
+        handler.addJdbiRowMethods(type);
+        type.editor().rebuild();
+    }
+
+    private static class JavacJdbiRowHandler extends JdbiRowHandler<JavacType, JavacField> {
+        @Override
+        protected boolean isTransient(JavacField field) {
+            return (field.get().mods.flags & Flags.TRANSIENT) != 0;
+        }
+    }
+}
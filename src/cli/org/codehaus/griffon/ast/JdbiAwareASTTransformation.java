@@ -52,7 +52,20 @@ public class JdbiAwareASTTransformation extends AbstractASTTransformation implem
     private static final ClassNode DEFAULT_JDBI_PROVIDER_CNODE = makeClassSafe(DefaultJdbiProvider.class);
 
     private static final String[] DELEGATING_METHODS = new String[] {
-        METHOD_WITH_JDBI
+        METHOD_WITH_JDBI,
+        METHOD_WITH_JDBI_HANDLE,
+        METHOD_WITH_JDBI_TRANSACTION,
+        METHOD_WITH_JDBI_ASYNC,
+        METHOD_WITH_JDBI_BATCH,
+        METHOD_WITH_JDBI_STREAM,
+        METHOD_OPEN_JDBI_STREAM,
+        METHOD_FETCH_JDBI_COLUMNS,
+        METHOD_WITH_JDBI_READ_ONLY,
+        METHOD_WITH_JDBI_ALL,
+        METHOD_WITH_JDBI_EACH,
+        METHOD_WITH_JDBI_DAO,
+        METHOD_GET_JDBI_DAO,
+        METHOD_GET_JDBI_WRITE_BEHIND
     };
 
     static {
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.ast;
+
+import griffon.plugins.jdbi.JdbiRowMapper;
+import griffon.plugins.jdbi.JdbiRowMapping;
+import groovy.transform.CompileStatic;
+import lombok.core.handlers.JdbiAwareConstants;
+import org.codehaus.groovy.ast.*;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.EmptyStatement;
+import org.codehaus.groovy.ast.stmt.IfStatement;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SimpleMessage;
+import org.codehaus.groovy.syntax.Token;
+import org.codehaus.groovy.syntax.Types;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.codehaus.groovy.transform.sc.StaticCompileTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.codehaus.griffon.ast.GriffonASTUtils.*;
+
+/**
+ * Handles generation of code for the {@code @JdbiRow} annotation.
+ * <p/>
+ * The generated {@code readJdbiRow} method is statically compiled, fields are
+ * assigned directly from the typed {@code ResultSet} getters.
+ *
+ * @author Andres Almiray
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class JdbiRowASTTransformation extends AbstractASTTransformation implements JdbiAwareConstants {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiRowASTTransformation.class);
+    private static final ClassNode JDBI_ROW_MAPPING_CNODE = makeClassSafe(JdbiRowMapping.class);
+    private static final ClassNode JDBI_ROW_MAPPER_CNODE = makeClassSafe(JdbiRowMapper.class);
+    private static final ClassNode RESULT_SET_CNODE = makeClassSafe(ResultSet.class);
+    private static final ClassNode SQL_EXCEPTION_CNODE = makeClassSafe(SQLException.class);
+    private static final ClassNode COMPILE_STATIC_CNODE = makeClassSafe(CompileStatic.class);
+
+    /**
+     * Handles the bulk of the processing, mostly delegating to other methods.
+     *
+     * @param nodes  the ast nodes
+     * @param source the source unit for the nodes
+     */
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        checkNodesForAnnotationAndType(nodes[0], nodes[1]);
+        ClassNode classNode = (ClassNode) nodes[1];
+        if (classNode.isInterface() || classNode.isEnum() || Modifier.isAbstract(classNode.getModifiers())) {
+            source.getErrorCollector().addErrorAndContinue(
+                new SimpleMessage("@JdbiRow cannot be processed on " + classNode.getName() + " because it is not a concrete class.", source)
+            );
+            return;
+        }
+        if (classNode.implementsInterface(JDBI_ROW_MAPPING_CNODE)) return;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Generating " + JdbiRowMapping.class.getName() + " for " + classNode.getName());
+        }
+        apply(classNode);
+    }
+
+    public static void apply(ClassNode declaringClass) {
+        List<FieldNode> fields = new ArrayList<FieldNode>();
+        for (FieldNode field : declaringClass.getFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || Modifier.isTransient(modifiers) ||
+                (modifiers & ACC_SYNTHETIC) != 0 || field.getName().contains("$")) continue;
+            fields.add(field);
+        }
+
+        injectInterface(declaringClass, JDBI_ROW_MAPPING_CNODE);
+
+        // add method:
+        // String[] jdbiRowColumns() {
+        //     return ['field1', 'field2'] as String[]
+        // }
+        List<Expression> names = new ArrayList<Expression>();
+        for (FieldNode field : fields) {
+            names.add(new ConstantExpression(field.getName()));
+        }
+        injectMethod(declaringClass, new MethodNode(
+            METHOD_JDBI_ROW_COLUMNS,
+            ACC_PUBLIC,
+            ClassHelper.STRING_TYPE.makeArray(),
+            Parameter.EMPTY_ARRAY,
+            NO_EXCEPTIONS,
+            returns(new ArrayExpression(ClassHelper.STRING_TYPE, names))
+        ));
+
+        // add method:
+        // JdbiRowMapping newJdbiRow() {
+        //     return new DeclaringClass()
+        // }
+        injectMethod(declaringClass, new MethodNode(
+            METHOD_NEW_JDBI_ROW,
+            ACC_PUBLIC,
+            JDBI_ROW_MAPPING_CNODE,
+            Parameter.EMPTY_ARRAY,
+            NO_EXCEPTIONS,
+            returns(new ConstructorCallExpression(declaringClass, ArgumentListExpression.EMPTY_ARGUMENTS))
+        ));
+
+        // add method:
+        // @CompileStatic
+        // void readJdbiRow(ResultSet resultSet, int[] columns) throws SQLException {
+        //     if (columns[0] > 0) this.field1 = resultSet.getLong(columns[0])
+        //     ...
+        // }
+        Parameter resultSet = param(RESULT_SET_CNODE, RESULT_SET);
+        Parameter columns = param(ClassHelper.int_TYPE.makeArray(), COLUMNS);
+        BlockStatement body = new BlockStatement();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldNode field = fields.get(i);
+            Expression column = new BinaryExpression(
+                new VariableExpression(columns),
+                Token.newSymbol(Types.LEFT_SQUARE_BRACKET, -1, -1),
+                new ConstantExpression(i, true));
+            body.addStatement(new IfStatement(
+                new BooleanExpression(new BinaryExpression(
+                    column,
+                    Token.newSymbol(Types.COMPARE_GREATER_THAN, -1, -1),
+                    new ConstantExpression(0, true))),
+                assigns(field(field), readColumn(field.getType(), new VariableExpression(resultSet), column)),
+                EmptyStatement.INSTANCE
+            ));
+        }
+        MethodNode readMethod = new MethodNode(
+            METHOD_READ_JDBI_ROW,
+            ACC_PUBLIC,
+            ClassHelper.VOID_TYPE,
+            params(resultSet, columns),
+            new ClassNode[]{SQL_EXCEPTION_CNODE},
+            body
+        );
+        AnnotationNode compileStatic = new AnnotationNode(COMPILE_STATIC_CNODE);
+        readMethod.addAnnotation(compileStatic);
+        injectMethod(declaringClass, readMethod);
+        declaringClass.addTransform(StaticCompileTransformation.class, compileStatic);
+    }
+
+    private static Expression readColumn(ClassNode type, Expression resultSet, Expression column) {
+        String typeName = type.getName();
+        for (String[] getter : RESULT_SET_GETTERS) {
+            if (getter[0].equals(typeName)) {
+                return call(resultSet, getter[2], new ArgumentListExpression(column));
+            }
+        }
+        for (String[] getter : JDBI_ROW_MAPPER_GETTERS) {
+            if (getter[0].equals(typeName)) {
+                return call(JDBI_ROW_MAPPER_CNODE, getter[2], new ArgumentListExpression(resultSet, column));
+            }
+        }
+        return new CastExpression(type, call(resultSet, "getObject", new ArgumentListExpression(column)));
+    }
+}
@@ -16,12 +16,33 @@
 
 package griffon.plugins.jdbi;
 
+import griffon.util.ApplicationHolder;
 import griffon.util.CallableWithArgs;
 import groovy.lang.Closure;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.exceptions.UnableToObtainConnectionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.isBlank;
 
 /**
@@ -30,6 +51,21 @@ import static griffon.util.GriffonNameUtils.isBlank;
 public abstract class AbstractJdbiProvider implements JdbiProvider {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractJdbiProvider.class);
     private static final String DEFAULT = "default";
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int DEFAULT_COLUMNAR_CAPACITY = 1024;
+    private static final ThreadLocal<Map<String, Handle>> HANDLES = new ThreadLocal<Map<String, Handle>>() {
+        @Override
+        protected Map<String, Handle> initialValue() {
+            return new HashMap<String, Handle>();
+        }
+    };
+    // actions to run once the outermost withJdbiHandle call of a datasource is done
+    private static final ThreadLocal<Map<String, List<Runnable>>> AFTER_HANDLE = new ThreadLocal<Map<String, List<Runnable>>>() {
+        @Override
+        protected Map<String, List<Runnable>> initialValue() {
+            return new HashMap<String, List<Runnable>>();
+        }
+    };
 
     public <R> R withJdbi(Closure<R> closure) {
         return withJdbi(DEFAULT, closure);
@@ -38,11 +74,29 @@ public abstract class AbstractJdbiProvider implements JdbiProvider {
     public <R> R withJdbi(String dataSourceName, Closure<R> closure) {
         if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
         if (closure != null) {
-            DBI dbi = getJdbi(dataSourceName);
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Executing statements on datasource '" + dataSourceName + "'");
+            leaseJdbi(dataSourceName);
+            try {
+                DBI dbi = getJdbi(dataSourceName);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Executing statements on datasource '" + dataSourceName + "'");
+                }
+                JdbiBulkhead bulkhead = getBulkhead(dataSourceName);
+                long permit = bulkhead != null ? bulkhead.acquire() : 0L;
+                long start = JdbiMetrics.getInstance().start(dataSourceName);
+                JdbiTracer.Scope scope = JdbiTracer.getInstance().start(dataSourceName);
+                boolean success = false;
+                try {
+                    R result = closure.call(dataSourceName, dbi);
+                    success = true;
+                    return result;
+                } finally {
+                    JdbiTracer.getInstance().finish(scope, success);
+                    JdbiMetrics.getInstance().stop(dataSourceName, start, success);
+                    if (bulkhead != null) bulkhead.release(permit);
+                }
+            } finally {
+                releaseJdbi(dataSourceName);
             }
-            return closure.call(dataSourceName, dbi);
         }
         return null;
     }
@@ -54,14 +108,623 @@ public abstract class AbstractJdbiProvider implements JdbiProvider {
     public <R> R withJdbi(String dataSourceName, CallableWithArgs<R> callable) {
         if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
         if (callable != null) {
-            DBI dbi = getJdbi(dataSourceName);
+            leaseJdbi(dataSourceName);
+            try {
+                DBI dbi = getJdbi(dataSourceName);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Executing statements on datasource '" + dataSourceName + "'");
+                }
+                JdbiBulkhead bulkhead = getBulkhead(dataSourceName);
+                long permit = bulkhead != null ? bulkhead.acquire() : 0L;
+                long start = JdbiMetrics.getInstance().start(dataSourceName);
+                JdbiTracer.Scope scope = JdbiTracer.getInstance().start(dataSourceName);
+                boolean success = false;
+                try {
+                    R result = callable.call(new Object[]{dataSourceName, dbi});
+                    success = true;
+                    return result;
+                } finally {
+                    JdbiTracer.getInstance().finish(scope, success);
+                    JdbiMetrics.getInstance().stop(dataSourceName, start, success);
+                    if (bulkhead != null) bulkhead.release(permit);
+                }
+            } finally {
+                releaseJdbi(dataSourceName);
+            }
+        }
+        return null;
+    }
+
+    public <R> R withJdbiHandle(Closure<R> closure) {
+        return withJdbiHandle(DEFAULT, closure);
+    }
+
+    public <R> R withJdbiHandle(String dataSourceName, Closure<R> closure) {
+        return closure != null ? withJdbiHandle(dataSourceName, asCallable(closure)) : null;
+    }
+
+    public <R> R withJdbiHandle(CallableWithArgs<R> callable) {
+        return withJdbiHandle(DEFAULT, callable);
+    }
+
+    public <R> R withJdbiHandle(String dataSourceName, CallableWithArgs<R> callable) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        if (callable != null) {
+            Map<String, Handle> handles = HANDLES.get();
+            Handle handle = handles.get(dataSourceName);
+            boolean owner = handle == null;
+            JdbiBulkhead bulkhead = owner ? getBulkhead(dataSourceName) : null;
+            long permit = 0L;
+            if (owner) {
+                leaseJdbi(dataSourceName);
+                boolean acquired = false;
+                try {
+                    DBI dbi = getJdbi(dataSourceName);
+                    if (bulkhead != null) permit = bulkhead.acquire();
+                    acquired = true;
+                    handle = dbi.open();
+                } catch (RuntimeException e) {
+                    if (acquired && bulkhead != null) bulkhead.release(permit);
+                    releaseJdbi(dataSourceName);
+                    throw e;
+                }
+                handles.put(dataSourceName, handle);
+            }
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Executing statements on datasource '" + dataSourceName + "'");
+                LOG.debug("Executing statements on datasource '" + dataSourceName + "' with " + (owner ? "a new" : "an existing") + " handle");
+            }
+            // nested calls are accounted for by the outermost one
+            long start = owner ? JdbiMetrics.getInstance().start(dataSourceName) : 0L;
+            JdbiTracer.Scope scope = owner ? JdbiTracer.getInstance().start(dataSourceName) : null;
+            boolean success = false;
+            try {
+                R result = callable.call(new Object[]{dataSourceName, handle});
+                success = true;
+                return result;
+            } finally {
+                if (owner) {
+                    handles.remove(dataSourceName);
+                    handle.close();
+                    JdbiTracer.getInstance().finish(scope, success);
+                    JdbiMetrics.getInstance().stop(dataSourceName, start, success);
+                    if (bulkhead != null) bulkhead.release(permit);
+                    releaseJdbi(dataSourceName);
+                    runAfterHandle(dataSourceName);
+                }
             }
-            return callable.call(new Object[]{dataSourceName, dbi});
         }
         return null;
     }
 
+    public <R> R withJdbiTransaction(Closure<R> closure) {
+        return withJdbiTransaction(DEFAULT, null, closure);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, Closure<R> closure) {
+        return withJdbiTransaction(dataSourceName, null, closure);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, TransactionIsolationLevel isolation, Closure<R> closure) {
+        return closure != null ? withJdbiTransaction(dataSourceName, isolation, asCallable(closure)) : null;
+    }
+
+    public <R> R withJdbiTransaction(CallableWithArgs<R> callable) {
+        return withJdbiTransaction(DEFAULT, null, callable);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, CallableWithArgs<R> callable) {
+        return withJdbiTransaction(dataSourceName, null, callable);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, final TransactionIsolationLevel isolation, final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        return withJdbiHandle(dataSourceName, new CallableWithArgs<R>() {
+            public R call(Object[] args) {
+                Handle handle = (Handle) args[1];
+                // nested transactions join the outer one
+                if (handle.isInTransaction()) return callable.call(args);
+                return inTransaction(handle, isolation, callable, args);
+            }
+        });
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(Closure<R> closure) {
+        return withJdbiAsync(DEFAULT, closure);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, Closure<R> closure) {
+        return closure != null ? withJdbiAsync(dataSourceName, asCallable(closure)) : null;
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(CallableWithArgs<R> callable) {
+        return withJdbiAsync(DEFAULT, callable);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, final CallableWithArgs<R> callable) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        if (callable == null) return null;
+        final String ds = dataSourceName;
+        return JdbiExecutors.getInstance().submit(ds, new Callable<R>() {
+            public R call() {
+                return withJdbi(ds, callable);
+            }
+        });
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize, (CallableWithArgs<?>) null);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, Closure<?> progress) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize) {
+        return withJdbiBatch(dataSourceName, sql, rows, chunkSize, (CallableWithArgs<?>) null);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize, Closure<?> progress) {
+        return withJdbiBatch(dataSourceName, sql, rows, chunkSize, progress != null ? asCallable(progress) : null);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, final Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        if (rows == null) return null;
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Batch chunk size must be greater than zero, got " + chunkSize);
+        }
+        final JdbiBatchRunner runner = new JdbiBatchRunner(dataSourceName, sql, chunkSize, progress);
+        return withJdbiHandle(dataSourceName, new CallableWithArgs<JdbiBatchResult>() {
+            public JdbiBatchResult call(Object[] args) {
+                return runner.run((Handle) args[1], rows);
+            }
+        });
+    }
+
+    public <R> R withJdbiStream(String sql, Map<String, ?> params, Closure<R> closure) {
+        return withJdbiStream(DEFAULT, sql, params, closure);
+    }
+
+    public <R> R withJdbiStream(String dataSourceName, String sql, Map<String, ?> params, Closure<R> closure) {
+        return closure != null ? withJdbiStream(dataSourceName, sql, params, asCallable(closure)) : null;
+    }
+
+    public <R> R withJdbiStream(String sql, Map<String, ?> params, CallableWithArgs<R> callable) {
+        return withJdbiStream(DEFAULT, sql, params, callable);
+    }
+
+    public <R> R withJdbiStream(String dataSourceName, final String sql, final Map<String, ?> params, final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        return withJdbiHandle(dataSourceName, new CallableWithArgs<R>() {
+            public R call(Object[] args) {
+                String name = (String) args[0];
+                JdbiResultStream<Map<String, Object>> stream = openStream(name, (Handle) args[1], null, sql, params);
+                try {
+                    return callable.call(new Object[]{name, stream});
+                } finally {
+                    stream.close();
+                }
+            }
+        });
+    }
+
+    public JdbiResultStream<Map<String, Object>> openJdbiStream(String sql, Map<String, ?> params) {
+        return openJdbiStream(DEFAULT, sql, params);
+    }
+
+    public JdbiResultStream<Map<String, Object>> openJdbiStream(String dataSourceName, String sql, Map<String, ?> params) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        // the stream outlives this call, it holds a lease and a permit of its own until closed
+        final Runnable lease = JdbiHolder.getInstance().leaseDetachedJdbi(dataSourceName);
+        JdbiBulkhead bulkhead = null;
+        long permit = 0L;
+        Handle handle;
+        try {
+            DBI dbi = getJdbi(dataSourceName);
+            bulkhead = getBulkhead(dataSourceName);
+            if (bulkhead != null) permit = bulkhead.acquireDetached();
+            handle = dbi.open();
+        } catch (RuntimeException e) {
+            if (bulkhead != null) bulkhead.releaseDetached(permit);
+            lease.run();
+            throw e;
+        }
+
+        final JdbiBulkhead streamBulkhead = bulkhead;
+        final long streamPermit = permit;
+        return openStream(dataSourceName, handle, new Runnable() {
+            public void run() {
+                try {
+                    if (streamBulkhead != null) streamBulkhead.releaseDetached(streamPermit);
+                } finally {
+                    lease.run();
+                }
+            }
+        }, sql, params);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns) {
+        return fetchJdbiColumns(DEFAULT, sql, params, columns, false);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap) {
+        return fetchJdbiColumns(DEFAULT, sql, params, columns, offHeap);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns) {
+        return fetchJdbiColumns(dataSourceName, sql, params, columns, false);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        Map config = JdbiConnector.jdbiConfig(ApplicationHolder.getApplication(), dataSourceName);
+        final JdbiColumnarReader reader = new JdbiColumnarReader(dataSourceName, sql, params, columns, offHeap,
+            getConfigValueAsInt(config, "stream.fetchSize", DEFAULT_FETCH_SIZE),
+            getConfigValueAsInt(config, "columnar.initialCapacity", DEFAULT_COLUMNAR_CAPACITY));
+        return withJdbiHandle(dataSourceName, new CallableWithArgs<JdbiColumnarResult>() {
+            public JdbiColumnarResult call(Object[] args) {
+                return reader.read((Handle) args[1]);
+            }
+        });
+    }
+
+    public <R> R withJdbiReadOnly(Closure<R> closure) {
+        return withJdbiReadOnly(DEFAULT, closure);
+    }
+
+    public <R> R withJdbiReadOnly(String groupName, Closure<R> closure) {
+        return closure != null ? withJdbiReadOnly(groupName, asCallable(closure)) : null;
+    }
+
+    public <R> R withJdbiReadOnly(CallableWithArgs<R> callable) {
+        return withJdbiReadOnly(DEFAULT, callable);
+    }
+
+    public <R> R withJdbiReadOnly(String groupName, CallableWithArgs<R> callable) {
+        if (isBlank(groupName)) groupName = DEFAULT;
+        if (callable == null) return null;
+        JdbiDataSourceGroup group = getDataSourceGroup(groupName);
+
+        // reads inside a transaction must see its writes
+        Handle handle = currentHandle(group.getPrimary());
+        if (handle != null && handle.isInTransaction()) return withJdbi(group.getPrimary(), callable);
+
+        int replica = group.acquire();
+        try {
+            return withJdbi(group.nameOf(replica), callable);
+        } catch (RuntimeException e) {
+            if (replica == JdbiDataSourceGroup.PRIMARY || !isConnectionFailure(e)) throw e;
+            LOG.warn("Replica '" + group.nameOf(replica) + "' of group '" + groupName + "' is unavailable, taking it out of rotation", e);
+            group.quarantine(replica);
+        } finally {
+            group.release(replica);
+        }
+
+        // one more attempt, on another replica or the primary
+        replica = group.acquire();
+        try {
+            return withJdbi(group.nameOf(replica), callable);
+        } finally {
+            group.release(replica);
+        }
+    }
+
+    public JdbiFanOutResult withJdbiAll(Map<String, ?> bodies) {
+        return withJdbiAll(bodies, 0L);
+    }
+
+    public JdbiFanOutResult withJdbiAll(Map<String, ?> bodies, long timeoutMillis) {
+        if (bodies == null) return null;
+        Map<String, CallableWithArgs<?>> branches = new LinkedHashMap<String, CallableWithArgs<?>>();
+        for (Map.Entry<String, ?> entry : bodies.entrySet()) {
+            String dataSourceName = isBlank(entry.getKey()) ? DEFAULT : entry.getKey();
+            Object body = entry.getValue();
+            if (body instanceof Closure) {
+                branches.put(dataSourceName, asCallable((Closure<?>) body));
+            } else if (body instanceof CallableWithArgs) {
+                branches.put(dataSourceName, (CallableWithArgs<?>) body);
+            } else {
+                throw new IllegalArgumentException("Body for datasource '" + dataSourceName + "' must be a Closure or a CallableWithArgs, got " + body);
+            }
+        }
+        return fanOut(branches, timeoutMillis);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure) {
+        return withJdbiEach(dataSourceNames, closure, 0L);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure, long timeoutMillis) {
+        return closure != null ? withJdbiEach(dataSourceNames, asCallable(closure), timeoutMillis) : null;
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable) {
+        return withJdbiEach(dataSourceNames, callable, 0L);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable, long timeoutMillis) {
+        if (dataSourceNames == null || callable == null) return null;
+        Map<String, CallableWithArgs<?>> branches = new LinkedHashMap<String, CallableWithArgs<?>>();
+        for (String dataSourceName : dataSourceNames) {
+            branches.put(isBlank(dataSourceName) ? DEFAULT : dataSourceName, callable);
+        }
+        return fanOut(branches, timeoutMillis);
+    }
+
+    public <T, R> R withJdbiDao(Class<T> daoClass, Closure<R> closure) {
+        return withJdbiDao(DEFAULT, daoClass, closure);
+    }
+
+    public <T, R> R withJdbiDao(String dataSourceName, Class<T> daoClass, Closure<R> closure) {
+        return closure != null ? withJdbiDao(dataSourceName, daoClass, asCallable(closure)) : null;
+    }
+
+    public <T, R> R withJdbiDao(Class<T> daoClass, CallableWithArgs<R> callable) {
+        return withJdbiDao(DEFAULT, daoClass, callable);
+    }
+
+    public <T, R> R withJdbiDao(String dataSourceName, final Class<T> daoClass, final CallableWithArgs<R> callable) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        if (daoClass == null || callable == null) return null;
+        return withJdbi(dataSourceName, new CallableWithArgs<R>() {
+            public R call(Object[] args) {
+                String dsName = (String) args[0];
+                // the DAO of the DBI this call was given, even if the datasource is reconnected meanwhile
+                return callable.call(new Object[]{dsName, getJdbiDao(dsName, (DBI) args[1], daoClass)});
+            }
+        });
+    }
+
+    public <T> T getJdbiDao(Class<T> daoClass) {
+        return getJdbiDao(DEFAULT, daoClass);
+    }
+
+    public <T> T getJdbiDao(String dataSourceName, Class<T> daoClass) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        return daoClass != null ? getJdbiDao(dataSourceName, getJdbi(dataSourceName), daoClass) : null;
+    }
+
+    public JdbiWriteBehind getJdbiWriteBehind() {
+        return getJdbiWriteBehind(DEFAULT);
+    }
+
+    public JdbiWriteBehind getJdbiWriteBehind(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        // connects the datasource on first use, which creates its queue
+        getJdbi(dataSourceName);
+        JdbiWriteBehind writeBehind = getWriteBehind(dataSourceName);
+        if (writeBehind == null) {
+            throw new IllegalStateException("Datasource '" + dataSourceName + "' has no write-behind queue, set jdbi.writeBehind.maxPending to enable it");
+        }
+        return writeBehind;
+    }
+
     protected abstract DBI getJdbi(String dataSourceName);
+
+    /**
+     * Returns the on-demand DAO of the given class for the given DBI, creating
+     * it the first time.
+     */
+    protected <T> T getJdbiDao(String dataSourceName, DBI dbi, Class<T> daoClass) {
+        return JdbiHolder.getInstance().fetchJdbiDao(dataSourceName, dbi, daoClass);
+    }
+
+    protected JdbiDataSourceGroup getDataSourceGroup(String groupName) {
+        return JdbiHolder.getInstance().fetchDataSourceGroup(groupName);
+    }
+
+    /**
+     * Registers a call in flight, so that a disconnect waits for it. Throws
+     * an {@code IllegalStateException} if the datasource is being
+     * disconnected or the application is shutting down.
+     */
+    protected void leaseJdbi(String dataSourceName) {
+        JdbiHolder.getInstance().leaseJdbi(dataSourceName);
+    }
+
+    protected void releaseJdbi(String dataSourceName) {
+        JdbiHolder.getInstance().releaseJdbi(dataSourceName);
+    }
+
+    protected JdbiBulkhead getBulkhead(String dataSourceName) {
+        return JdbiHolder.getInstance().getBulkhead(dataSourceName);
+    }
+
+    protected JdbiWriteBehind getWriteBehind(String dataSourceName) {
+        return JdbiHolder.getInstance().getWriteBehind(dataSourceName);
+    }
+
+    /**
+     * Returns the handle bound to the current thread by an enclosing
+     * {@code withJdbiHandle} or {@code withJdbiTransaction} call, if any.
+     */
+    protected static Handle currentHandle(String dataSourceName) {
+        return HANDLES.get().get(dataSourceName);
+    }
+
+    /**
+     * Runs the given action once the handle bound to the current thread by an
+     * enclosing {@code withJdbiHandle} or {@code withJdbiTransaction} call is
+     * closed, thus after its transaction committed or rolled back. Runs it
+     * right away if there is no such handle.
+     */
+    protected static void afterHandle(String dataSourceName, Runnable action) {
+        if (currentHandle(dataSourceName) == null) {
+            action.run();
+            return;
+        }
+        Map<String, List<Runnable>> actions = AFTER_HANDLE.get();
+        List<Runnable> pending = actions.get(dataSourceName);
+        if (pending == null) {
+            pending = new ArrayList<Runnable>();
+            actions.put(dataSourceName, pending);
+        }
+        pending.add(action);
+    }
+
+    private static void runAfterHandle(String dataSourceName) {
+        List<Runnable> pending = AFTER_HANDLE.get().remove(dataSourceName);
+        if (pending == null) return;
+        for (Runnable action : pending) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Action run after closing the handle of datasource '" + dataSourceName + "' failed", e);
+            }
+        }
+    }
+
+    private static <R> R inTransaction(Handle handle, TransactionIsolationLevel isolation, CallableWithArgs<R> callable, Object[] args) {
+        TransactionIsolationLevel previous = null;
+        if (isolation != null) {
+            previous = handle.getTransactionIsolationLevel();
+            handle.setTransactionIsolation(isolation);
+        }
+        boolean committed = false;
+        try {
+            handle.begin();
+            R result = callable.call(args);
+            handle.commit();
+            committed = true;
+            return result;
+        } finally {
+            if (!committed) rollbackQuietly(handle);
+            if (previous != null) handle.setTransactionIsolation(previous);
+        }
+    }
+
+    /**
+     * Runs every branch through {@code withJdbi} on the async pool of its
+     * datasource, so that the pool size and the bulkhead of each datasource
+     * still apply, then waits for all of them. Branches never run on the
+     * calling thread; a saturated pool fails the branch instead. A positive
+     * timeout applies to every branch on its own, counted from when the branch
+     * starts running; branches still running past it, or not started within
+     * it, are cancelled.
+     */
+    private JdbiFanOutResult fanOut(Map<String, CallableWithArgs<?>> branches, long timeoutMillis) {
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+        Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+        Map<String, Future<Object>> futures = new LinkedHashMap<String, Future<Object>>();
+        Map<String, AtomicLong> starts = new HashMap<String, AtomicLong>();
+        long timeoutNanos = timeoutMillis > 0L ? TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0L;
+        long submitted = System.nanoTime();
+        for (Map.Entry<String, CallableWithArgs<?>> branch : branches.entrySet()) {
+            final String dataSourceName = branch.getKey();
+            final CallableWithArgs<?> callable = branch.getValue();
+            final AtomicLong started = new AtomicLong();
+            starts.put(dataSourceName, started);
+            try {
+                futures.put(dataSourceName, JdbiExecutors.getInstance().fork(dataSourceName, new Callable<Object>() {
+                    public Object call() {
+                        long now = System.nanoTime();
+                        started.set(now != 0L ? now : 1L);
+                        return withJdbi(dataSourceName, callable);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                failures.put(dataSourceName, e);
+            }
+        }
+
+        for (Map.Entry<String, Future<Object>> entry : futures.entrySet()) {
+            String dataSourceName = entry.getKey();
+            Future<Object> future = entry.getValue();
+            try {
+                Object result = timeoutNanos == 0L ? future.get() : awaitBranch(future, starts.get(dataSourceName), submitted, timeoutNanos);
+                results.put(dataSourceName, result);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                failures.put(dataSourceName, new TimeoutException("Datasource '" + dataSourceName + "' did not complete within " + timeoutMillis + "ms"));
+            } catch (ExecutionException e) {
+                failures.put(dataSourceName, e.getCause());
+            } catch (CancellationException e) {
+                failures.put(dataSourceName, e);
+            } catch (InterruptedException e) {
+                for (Future<Object> f : futures.values()) f.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting on datasources " + futures.keySet(), e);
+            }
+        }
+
+        // keep the order in which branches were given
+        Map<String, Throwable> orderedFailures = new LinkedHashMap<String, Throwable>();
+        for (String dataSourceName : branches.keySet()) {
+            if (failures.containsKey(dataSourceName)) orderedFailures.put(dataSourceName, failures.get(dataSourceName));
+        }
+        return new JdbiFanOutResult(results, orderedFailures);
+    }
+
+    private static Object awaitBranch(Future<Object> future, AtomicLong started, long submitted, long timeoutNanos)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long start = started.get();
+            // the clock of a branch still queued runs from submission
+            long remaining = (start != 0L ? start : submitted) + timeoutNanos - System.nanoTime();
+            if (remaining <= 0L) {
+                if (start == 0L && started.get() != 0L) continue;
+                throw new TimeoutException();
+            }
+            try {
+                return future.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // the branch may have started meanwhile, which gives it more time
+            }
+        }
+    }
+
+    private static JdbiResultStream<Map<String, Object>> openStream(String dataSourceName, Handle handle, Runnable release, String sql, Map<String, ?> params) {
+        // drivers such as PostgreSQL ignore the fetch size in autocommit mode
+        boolean ownsTransaction = !handle.isInTransaction();
+        try {
+            if (ownsTransaction) handle.begin();
+            Map config = JdbiConnector.jdbiConfig(ApplicationHolder.getApplication(), dataSourceName);
+            Query<Map<String, Object>> query = handle.createQuery(sql)
+                .setFetchSize(getConfigValueAsInt(config, "stream.fetchSize", DEFAULT_FETCH_SIZE));
+            if (params != null) query.bindFromMap(params);
+            return new JdbiResultStream<Map<String, Object>>(dataSourceName, handle, query.iterator(), release, ownsTransaction);
+        } catch (RuntimeException e) {
+            if (ownsTransaction) rollbackQuietly(handle);
+            if (release != null) {
+                try {
+                    handle.close();
+                } finally {
+                    release.run();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof UnableToObtainConnectionException) return true;
+            // SQLState class 08 covers connection exceptions
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("08")) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void rollbackQuietly(Handle handle) {
+        try {
+            if (handle.isInTransaction()) handle.rollback();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not rollback transaction", e);
+        }
+    }
+
+    protected static <R> CallableWithArgs<R> asCallable(final Closure<R> closure) {
+        return new CallableWithArgs<R>() {
+            public R call(Object[] args) {
+                return closure.call(args);
+            }
+        };
+    }
 }
\ No newline at end of file
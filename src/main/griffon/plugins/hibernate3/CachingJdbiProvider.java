@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.ApplicationHolder;
+import griffon.util.CallableWithArgs;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.Update;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Caches the results of queries run through {@code cachedQuery}, one
+ * {@link JdbiQueryCache} per datasource. Writes run through {@code update}
+ * invalidate the cached queries that read from the table being written, once
+ * their transaction is over. Writes performed by other means should call
+ * {@code invalidate}. Queries run inside a transaction bypass the cache.
+ * Select it with {@code jdbiProvider = griffon.plugins.jdbi.CachingJdbiProvider}
+ * in {@code Config.groovy}.
+ *
+ * @author Andres Almiray
+ */
+public class CachingJdbiProvider extends AbstractJdbiProvider {
+    private static final String DEFAULT = "default";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_TTL = 60000;
+
+    private final ConcurrentMap<String, JdbiQueryCache> caches = new ConcurrentHashMap<String, JdbiQueryCache>();
+
+    public List<Map<String, Object>> cachedQuery(String sql, Map<String, ?> params) {
+        return cachedQuery(DEFAULT, sql, params);
+    }
+
+    /**
+     * Returns the rows of a query, from the cache when possible. The returned
+     * list and its rows are unmodifiable.
+     */
+    public List<Map<String, Object>> cachedQuery(String dataSourceName, final String sql, final Map<String, ?> params) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        CallableWithArgs<List<Map<String, Object>>> query = new CallableWithArgs<List<Map<String, Object>>>() {
+            public List<Map<String, Object>> call(Object[] args) {
+                Query<Map<String, Object>> query = ((Handle) args[1]).createQuery(sql);
+                if (params != null) query.bindFromMap(params);
+                return query.list();
+            }
+        };
+        // a transaction may see its own uncommitted writes, which must not be shared
+        if (isInTransaction(dataSourceName)) return JdbiQueryCache.immutable(withJdbiHandle(dataSourceName, query));
+
+        JdbiQueryCache cache = getQueryCache(dataSourceName);
+        List<Map<String, Object>> rows = cache.get(sql, params);
+        if (rows != null) return rows;
+
+        JdbiQueryCache.Load load = cache.beginLoad(sql);
+        rows = withJdbiHandle(dataSourceName, query);
+        return cache.put(sql, params, rows, load);
+    }
+
+    public int update(String sql, Map<String, ?> params) {
+        return update(DEFAULT, sql, params);
+    }
+
+    /**
+     * Executes a write and invalidates the cached queries that read from the
+     * table it writes to. Inside a transaction they are invalidated once the
+     * transaction is over, as queries run before the commit may still cache
+     * the rows it replaces.
+     */
+    public int update(String dataSourceName, final String sql, final Map<String, ?> params) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        Integer count = withJdbiHandle(dataSourceName, new CallableWithArgs<Integer>() {
+            public Integer call(Object[] args) {
+                Update update = ((Handle) args[1]).createStatement(sql);
+                if (params != null) update.bindFromMap(params);
+                return update.execute();
+            }
+        });
+        final String name = dataSourceName;
+        final String table = JdbiQueryCache.writtenTable(sql);
+        Runnable invalidation = new Runnable() {
+            public void run() {
+                if (table != null) {
+                    invalidate(name, table);
+                } else {
+                    invalidateAll(name);
+                }
+            }
+        };
+        if (isInTransaction(dataSourceName)) {
+            afterHandle(dataSourceName, invalidation);
+        } else {
+            invalidation.run();
+        }
+        return count;
+    }
+
+    public void invalidate(String dataSourceName, String... tables) {
+        invalidate(dataSourceName, Arrays.asList(tables));
+    }
+
+    public void invalidate(String dataSourceName, Collection<String> tables) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        JdbiQueryCache cache = caches.get(dataSourceName);
+        if (cache != null) cache.invalidate(tables);
+    }
+
+    public void invalidateAll(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        JdbiQueryCache cache = caches.get(dataSourceName);
+        if (cache != null) cache.invalidateAll();
+    }
+
+    public JdbiQueryCache getQueryCache(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        JdbiQueryCache cache = caches.get(dataSourceName);
+        if (cache == null) {
+            Map config = JdbiConnector.jdbiConfig(ApplicationHolder.getApplication(), dataSourceName);
+            cache = new JdbiQueryCache(dataSourceName,
+                Math.max(1, getConfigValueAsInt(config, "queryCache.maxEntries", DEFAULT_MAX_ENTRIES)),
+                getConfigValueAsInt(config, "queryCache.ttl", DEFAULT_TTL));
+            JdbiQueryCache previous = caches.putIfAbsent(dataSourceName, cache);
+            if (previous != null) cache = previous;
+        }
+        return cache;
+    }
+
+    private static boolean isInTransaction(String dataSourceName) {
+        Handle handle = currentHandle(dataSourceName);
+        return handle != null && handle.isInTransaction();
+    }
+
+    @Override
+    protected DBI getJdbi(String dataSourceName) {
+        return JdbiHolder.getInstance().fetchJdbi(dataSourceName);
+    }
+}
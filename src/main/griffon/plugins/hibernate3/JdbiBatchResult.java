@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@code withJdbiBatch} call, one {@code Chunk} per batch sent
+ * to the database.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiBatchResult {
+    private final String dataSourceName;
+    private final List<Chunk> chunks;
+
+    public JdbiBatchResult(String dataSourceName, List<Chunk> chunks) {
+        this.dataSourceName = dataSourceName;
+        this.chunks = Collections.unmodifiableList(chunks);
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public List<Chunk> getFailures() {
+        List<Chunk> failures = new ArrayList<Chunk>();
+        for (Chunk chunk : chunks) {
+            if (chunk.getFailure() != null) failures.add(chunk);
+        }
+        return Collections.unmodifiableList(failures);
+    }
+
+    public boolean isSuccessful() {
+        for (Chunk chunk : chunks) {
+            if (chunk.getFailure() != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Number of rows read from the source, including those of failed chunks.
+     */
+    public long getRows() {
+        long rows = 0;
+        for (Chunk chunk : chunks) rows += chunk.getSize();
+        return rows;
+    }
+
+    /**
+     * Sum of the update counts reported by the driver for committed chunks.
+     */
+    public long getUpdated() {
+        long updated = 0;
+        for (Chunk chunk : chunks) updated += chunk.getUpdated();
+        return updated;
+    }
+
+    public String toString() {
+        return "JdbiBatchResult[dataSource=" + dataSourceName + ", chunks=" + chunks.size() +
+            ", rows=" + getRows() + ", updated=" + getUpdated() + ", failures=" + getFailures().size() + "]";
+    }
+
+    public static class Chunk {
+        private final int index;
+        private final long offset;
+        private final int size;
+        private final int[] counts;
+        private final Throwable failure;
+
+        public Chunk(int index, long offset, int size, int[] counts, Throwable failure) {
+            this.index = index;
+            this.offset = offset;
+            this.size = size;
+            this.counts = counts != null ? counts : new int[0];
+            this.failure = failure;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Position of the first row of this chunk in the source.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Update counts as returned by {@code PreparedStatement.executeBatch()};
+         * empty if the chunk failed.
+         */
+        public int[] getCounts() {
+            return counts.clone();
+        }
+
+        public long getUpdated() {
+            long updated = 0;
+            // drivers may report SUCCESS_NO_INFO (-2) instead of a row count
+            for (int count : counts) if (count > 0) updated += count;
+            return updated;
+        }
+
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        public String toString() {
+            return "Chunk[index=" + index + ", offset=" + offset + ", size=" + size +
+                (failure != null ? ", failure=" + failure : ", updated=" + getUpdated()) + "]";
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.CallableWithArgs;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends rows to the database in chunks of {@code PreparedBatch}es. Rows are
+ * pulled from the source one chunk at a time, so only the chunk being sent is
+ * held in memory.
+ *
+ * @author Andres Almiray
+ */
+final class JdbiBatchRunner {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiBatchRunner.class);
+
+    private final String dataSourceName;
+    private final String sql;
+    private final int chunkSize;
+    private final CallableWithArgs<?> progress;
+
+    JdbiBatchRunner(String dataSourceName, String sql, int chunkSize, CallableWithArgs<?> progress) {
+        this.dataSourceName = dataSourceName;
+        this.sql = sql;
+        this.chunkSize = chunkSize;
+        this.progress = progress;
+    }
+
+    JdbiBatchResult run(Handle handle, Iterable<?> rows) {
+        // inside an enclosing transaction chunks join it and failures abort the whole batch
+        boolean joined = handle.isInTransaction();
+        Iterator<?> iterator = rows.iterator();
+        List<JdbiBatchResult.Chunk> chunks = new ArrayList<JdbiBatchResult.Chunk>();
+        long offset = 0;
+        List<Object> rowsInChunk;
+        while ((rowsInChunk = read(iterator)) != null) {
+            int[] counts = null;
+            Throwable failure = null;
+            if (joined) {
+                counts = execute(handle, rowsInChunk);
+            } else {
+                try {
+                    counts = executeInTransaction(handle, rowsInChunk);
+                } catch (RuntimeException e) {
+                    LOG.warn("Batch chunk " + chunks.size() + " on datasource '" + dataSourceName + "' failed", e);
+                    failure = e;
+                }
+            }
+            JdbiBatchResult.Chunk chunk = new JdbiBatchResult.Chunk(chunks.size(), offset, rowsInChunk.size(), counts, failure);
+            chunks.add(chunk);
+            offset += rowsInChunk.size();
+            if (progress != null) progress.call(new Object[]{dataSourceName, chunk, offset});
+        }
+        return new JdbiBatchResult(dataSourceName, chunks);
+    }
+
+    private int[] executeInTransaction(Handle handle, List<Object> rows) {
+        boolean committed = false;
+        handle.begin();
+        try {
+            int[] counts = execute(handle, rows);
+            handle.commit();
+            committed = true;
+            return counts;
+        } finally {
+            if (!committed) {
+                try {
+                    handle.rollback();
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not rollback batch chunk", e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int[] execute(Handle handle, List<Object> rows) {
+        PreparedBatch batch = handle.prepareBatch(sql);
+        for (Object row : rows) {
+            if (row instanceof Map) {
+                batch.add((Map<String, ?>) row);
+            } else if (row instanceof Object[]) {
+                batch.add((Object[]) row);
+            } else if (row instanceof Collection) {
+                batch.add(((Collection<?>) row).toArray());
+            } else {
+                batch.add().bindFromProperties(row);
+            }
+        }
+        return batch.execute();
+    }
+
+    private List<Object> read(Iterator<?> iterator) {
+        if (!iterator.hasNext()) return null;
+        List<Object> rows = new ArrayList<Object>(chunkSize);
+        while (rows.size() < chunkSize && iterator.hasNext()) {
+            rows.add(iterator.next());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+import griffon.util.ApplicationHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of calls in flight against a single datasource so that a
+ * slow database cannot take every thread of the application with it. Calls
+ * over the limit wait in a bounded queue for at most the configured timeout;
+ * calls that find the queue full, or that time out, are rejected with a
+ * {@code JdbiBulkheadRejectedException} and a {@code JdbiBulkheadRejected}
+ * event.
+ * <p>
+ * In adaptive mode the limit follows an AIMD rule driven by latency, compared
+ * as a moving average against the lowest average of the previous window of
+ * calls: while the average stays within {@code tolerance} times that baseline
+ * the limit grows by {@code 1/limit} for every call that completes with the
+ * limit in use; past it the limit is multiplied by {@code backoff}, at most
+ * once per {@code limit} calls. It never leaves {@code [minLimit, maxLimit]}.
+ * <p>
+ * Permits are reentrant per thread: nested calls on the same datasource do
+ * not take a second permit, thus they can neither deadlock nor be rejected.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiBulkhead {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiBulkhead.class);
+    private static final int WINDOW = 100;
+    private static final double SMOOTHING = 0.1d;
+    private static final double BASELINE_DRIFT = 0.1d;
+
+    private final String dataSourceName;
+    private final int maxQueue;
+    private final long timeoutNanos;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    // guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double smoothedNanos;
+    private double baselineNanos = Double.MAX_VALUE;
+    private double windowMinNanos = Double.MAX_VALUE;
+    private int windowCount;
+    private int sinceBackoff;
+
+    public JdbiBulkhead(String dataSourceName, int maxConcurrent, int maxQueue, long timeoutMillis) {
+        this(dataSourceName, maxConcurrent, maxQueue, timeoutMillis, false, maxConcurrent, maxConcurrent, 0d, 1d);
+    }
+
+    public JdbiBulkhead(String dataSourceName, int maxConcurrent, int maxQueue, long timeoutMillis,
+                        int minLimit, int maxLimit, double tolerance, double backoff) {
+        this(dataSourceName, maxConcurrent, maxQueue, timeoutMillis, true, minLimit, maxLimit, tolerance, backoff);
+    }
+
+    private JdbiBulkhead(String dataSourceName, int maxConcurrent, int maxQueue, long timeoutMillis, boolean adaptive,
+                         int minLimit, int maxLimit, double tolerance, double backoff) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Bulkhead of datasource '" + dataSourceName + "' needs a limit greater than zero, got " + maxConcurrent);
+        }
+        if (adaptive && (minLimit <= 0 || minLimit > maxLimit || tolerance < 1d || backoff <= 0d || backoff >= 1d)) {
+            throw new IllegalArgumentException("Invalid adaptive bulkhead settings for datasource '" + dataSourceName +
+                "': minLimit=" + minLimit + ", maxLimit=" + maxLimit + ", tolerance=" + tolerance + ", backoff=" + backoff);
+        }
+        this.dataSourceName = dataSourceName;
+        this.maxQueue = Math.max(maxQueue, 0);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, 0L));
+        this.adaptive = adaptive;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.limit = adaptive ? Math.max(minLimit, Math.min(maxConcurrent, maxLimit)) : maxConcurrent;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Takes a permit, waiting for one if needed. Returns the value to hand
+     * back to {@link #release(long)}: the time the permit was taken, or
+     * {@code 0} when the current thread already held one.
+     *
+     * @throws JdbiBulkheadRejectedException if the queue is full or the
+     *                                       timeout elapses
+     */
+    public long acquire() {
+        int[] held = depth.get();
+        if (held[0] > 0) {
+            held[0]++;
+            return 0L;
+        }
+
+        long permit = take();
+        held[0] = 1;
+        return permit;
+    }
+
+    /**
+     * Takes a permit that is not bound to the current thread, for work that
+     * outlives the current call such as an open stream. Hand the result to
+     * {@link #releaseDetached(long)}, from any thread. Returns {@code 0} when
+     * the current thread already holds a permit, which then covers the work
+     * too, as waiting for a second one could deadlock.
+     *
+     * @throws JdbiBulkheadRejectedException if the queue is full or the
+     *                                       timeout elapses
+     */
+    public long acquireDetached() {
+        int[] held = depth.get();
+        if (held[0] > 0) return 0L;
+        depth.remove();
+        return take();
+    }
+
+    private long take() {
+        String reason = null;
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+            } else if (queued >= maxQueue) {
+                reason = "queue is full (" + queued + " waiting)";
+            } else {
+                reason = await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (reason != null) throw reject(reason);
+
+        long now = System.nanoTime();
+        return now != 0L ? now : 1L;
+    }
+
+    /**
+     * Gives back a permit taken by {@link #acquire()}.
+     */
+    public void release(long permit) {
+        int[] held = depth.get();
+        if (held[0] > 0) held[0]--;
+        if (permit == 0L) return;
+        if (held[0] == 0) depth.remove();
+        giveBack(permit, true);
+    }
+
+    /**
+     * Gives back a permit taken by {@link #acquireDetached()}. How long it was
+     * held says little about database latency, the adaptive limit ignores it.
+     */
+    public void releaseDetached(long permit) {
+        if (permit != 0L) giveBack(permit, false);
+    }
+
+    private void giveBack(long permit, boolean sample) {
+        long latency = System.nanoTime() - permit;
+        lock.lock();
+        try {
+            int before = currentLimit();
+            inFlight--;
+            if (adaptive && sample) adapt(latency, before);
+            if (currentLimit() > before) {
+                permitReleased.signalAll();
+            } else {
+                permitReleased.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held; returns the reason of a rejection or null once a permit was taken
+    private String await() {
+        queued++;
+        try {
+            long remaining = timeoutNanos;
+            while (inFlight >= currentLimit()) {
+                if (remaining <= 0L) {
+                    return "no permit available within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms (limit " + currentLimit() + ")";
+                }
+                remaining = permitReleased.awaitNanos(remaining);
+            }
+            inFlight++;
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting on the bulkhead of datasource '" + dataSourceName + "'", e);
+        } finally {
+            queued--;
+        }
+    }
+
+    // called with the lock held
+    private void adapt(long latency, int before) {
+        smoothedNanos = smoothedNanos == 0d ? latency : smoothedNanos + (latency - smoothedNanos) * SMOOTHING;
+        if (smoothedNanos < windowMinNanos) windowMinNanos = smoothedNanos;
+        double reference = baselineNanos != Double.MAX_VALUE ? baselineNanos : windowMinNanos;
+        if (++windowCount >= WINDOW) {
+            // the baseline drops at once but rises slowly, so that a database that
+            // got slower for good does not pin the limit at its minimum forever
+            if (windowMinNanos < baselineNanos) {
+                baselineNanos = windowMinNanos;
+            } else {
+                baselineNanos += (windowMinNanos - baselineNanos) * BASELINE_DRIFT;
+            }
+            windowMinNanos = Double.MAX_VALUE;
+            windowCount = 0;
+        }
+
+        sinceBackoff++;
+        if (smoothedNanos > reference * tolerance) {
+            // back off at most once per round of calls, the ones still in flight were sent under the old limit
+            if (sinceBackoff >= before) {
+                limit = Math.max(minLimit, limit * backoff);
+                sinceBackoff = 0;
+            }
+        } else if (inFlight + 1 >= before) {
+            // only grow when the limit was actually reached
+            limit = Math.min(maxLimit, limit + 1d / limit);
+        }
+    }
+
+    private int currentLimit() {
+        return Math.max(1, (int) limit);
+    }
+
+    private JdbiBulkheadRejectedException reject(String reason) {
+        rejected.incrementAndGet();
+        JdbiBulkheadRejectedException e = new JdbiBulkheadRejectedException(dataSourceName,
+            "Rejected call on datasource '" + dataSourceName + "': " + reason);
+        if (LOG.isDebugEnabled()) LOG.debug(e.getMessage());
+        GriffonApplication app = ApplicationHolder.getApplication();
+        if (app != null) app.event("JdbiBulkheadRejected", Arrays.<Object>asList(dataSourceName, e));
+        return e;
+    }
+}
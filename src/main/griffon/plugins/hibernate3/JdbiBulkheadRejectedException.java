@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+/**
+ * Thrown when a call is turned away by the {@code JdbiBulkhead} of a
+ * datasource, either because its wait queue is full or because no permit
+ * became available within the configured timeout.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiBulkheadRejectedException extends RuntimeException {
+    private final String dataSourceName;
+
+    public JdbiBulkheadRejectedException(String dataSourceName, String message) {
+        super(message);
+        this.dataSourceName = dataSourceName;
+    }
+
+    public JdbiBulkheadRejectedException(String dataSourceName, String message, Throwable cause) {
+        super(message, cause);
+        this.dataSourceName = dataSourceName;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+}
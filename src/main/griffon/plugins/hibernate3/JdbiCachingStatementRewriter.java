@@ -0,0 +1,215 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.Binding;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.skife.jdbi.v2.tweak.StatementRewriter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rewrites statements with colon prefixed named parameters ({@code :name}) and
+ * positional parameters ({@code ?}) into JDBC SQL, keeping a bounded cache of
+ * parsed statements so that each distinct statement is parsed only once.
+ * Quoted text and {@code ::} casts are left untouched.
+ * <p>
+ * Lookups take no lock. Eviction is approximately LRU: once the cache grows
+ * past its size, one thread drops the least recently used statements down to
+ * seven eighths of it, while the others carry on.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiCachingStatementRewriter implements StatementRewriter {
+    private static final ConcurrentMap<String, JdbiCachingStatementRewriter> REWRITERS = new ConcurrentHashMap<String, JdbiCachingStatementRewriter>();
+
+    private final ConcurrentMap<String, ParsedStatement> cache = new ConcurrentHashMap<String, ParsedStatement>();
+    private final int maxSize;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public JdbiCachingStatementRewriter(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+    }
+
+    /**
+     * Returns the rewriter registered on the {@code DBI} of the given datasource, if any.
+     */
+    public static JdbiCachingStatementRewriter get(String dataSourceName) {
+        return REWRITERS.get(dataSourceName);
+    }
+
+    static void register(String dataSourceName, JdbiCachingStatementRewriter rewriter) {
+        REWRITERS.put(dataSourceName, rewriter);
+    }
+
+    static void unregister(String dataSourceName) {
+        REWRITERS.remove(dataSourceName);
+    }
+
+    public RewrittenStatement rewrite(String sql, Binding params, StatementContext ctx) {
+        ParsedStatement parsed = cache.get(sql);
+        if (parsed != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            parsed = parse(sql);
+            parsed.lastUsed = System.nanoTime();
+            ParsedStatement previous = cache.putIfAbsent(sql, parsed);
+            if (previous != null) {
+                parsed = previous;
+            } else if (cache.size() > maxSize) {
+                evict();
+            }
+            return new CachedRewrittenStatement(parsed, ctx);
+        }
+        parsed.lastUsed = System.nanoTime();
+        return new CachedRewrittenStatement(parsed, ctx);
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            ParsedStatement[] statements = cache.values().toArray(new ParsedStatement[0]);
+            int excess = statements.length - (maxSize - maxSize / 8);
+            if (excess <= 0) return;
+            long[] stamps = new long[statements.length];
+            for (int i = 0; i < statements.length; i++) stamps[i] = statements[i].lastUsed;
+            Arrays.sort(stamps);
+            long threshold = stamps[excess - 1];
+            for (ParsedStatement statement : statements) {
+                if (excess > 0 && statement.lastUsed <= threshold && cache.remove(statement.source, statement)) {
+                    evictions.incrementAndGet();
+                    excess--;
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0d : (double) h / total;
+    }
+
+    static ParsedStatement parse(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        List<String> names = new ArrayList<String>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                out.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int start = ++i;
+                while (i < length && (Character.isJavaIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                names.add(sql.substring(start, i));
+                out.append('?');
+            } else if (c == '?') {
+                names.add(null);
+                out.append('?');
+                i++;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return new ParsedStatement(sql, out.toString(), names.toArray(new String[names.size()]));
+    }
+
+    static class ParsedStatement {
+        private final String source;
+        private final String sql;
+        private final String[] names;
+        // nanoTime of the last lookup, racy updates are fine for eviction
+        private volatile long lastUsed;
+
+        ParsedStatement(String source, String sql, String[] names) {
+            this.source = source;
+            this.sql = sql;
+            this.names = names;
+        }
+    }
+
+    private static class CachedRewrittenStatement implements RewrittenStatement {
+        private final ParsedStatement statement;
+        private final StatementContext context;
+
+        private CachedRewrittenStatement(ParsedStatement statement, StatementContext context) {
+            this.statement = statement;
+            this.context = context;
+        }
+
+        public void bind(Binding params, PreparedStatement preparedStatement) throws SQLException {
+            int position = 0;
+            for (int i = 0; i < statement.names.length; i++) {
+                String name = statement.names[i];
+                Argument argument = name != null ? params.forName(name) : params.forPosition(position++);
+                if (argument == null && name != null) argument = params.forPosition(i);
+                if (argument == null) {
+                    throw new UnableToExecuteStatementException("Unable to execute, no " +
+                        (name != null ? "named parameter matches '" + name + "'" : "positional parameter at " + (position - 1)) +
+                        " and no positional param for place " + i, context);
+                }
+                argument.apply(i + 1, preparedStatement, context);
+            }
+        }
+
+        public String getSql() {
+            return statement.sql;
+        }
+    }
+}
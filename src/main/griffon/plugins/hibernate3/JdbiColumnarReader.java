@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import griffon.plugins.jdbi.JdbiColumnarResult.ColumnType;
+import org.skife.jdbi.v2.Folder2;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.StatementContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a query into primitive columns. Values go straight from the
+ * {@code ResultSet} getters into growable arrays, or direct buffers when
+ * off-heap, so no object is allocated per row; storage doubles in size
+ * whenever it fills up.
+ *
+ * @author Andres Almiray
+ */
+final class JdbiColumnarReader implements Folder2<JdbiColumnarReader> {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiColumnarReader.class);
+
+    private final String dataSourceName;
+    private final String sql;
+    private final Map<String, ?> params;
+    private final String[] names;
+    private final ColumnType[] types;
+    private final boolean offHeap;
+    private final int fetchSize;
+    private final Object[] columns;
+    private int[] indexes;
+    private int capacity;
+    private int rows;
+
+    JdbiColumnarReader(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columnTypes,
+                       boolean offHeap, int fetchSize, int initialCapacity) {
+        if (columnTypes == null || columnTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one column must be requested, e.g. [time: 'long', value: 'double']");
+        }
+        this.dataSourceName = dataSourceName;
+        this.sql = sql;
+        this.params = params;
+        this.offHeap = offHeap;
+        this.fetchSize = fetchSize;
+        this.names = new String[columnTypes.size()];
+        this.types = new ColumnType[columnTypes.size()];
+        int i = 0;
+        for (Map.Entry<String, ?> entry : columnTypes.entrySet()) {
+            names[i] = entry.getKey();
+            types[i++] = columnType(entry.getKey(), entry.getValue());
+        }
+        this.capacity = Math.max(16, initialCapacity);
+        this.columns = new Object[types.length];
+        for (int c = 0; c < types.length; c++) {
+            columns[c] = allocate(types[c], capacity);
+        }
+    }
+
+    JdbiColumnarResult read(Handle handle) {
+        // drivers such as PostgreSQL ignore the fetch size in autocommit mode
+        boolean ownsTransaction = !handle.isInTransaction();
+        try {
+            if (ownsTransaction) handle.begin();
+            Query<Map<String, Object>> query = handle.createQuery(sql).setFetchSize(fetchSize);
+            if (params != null) query.bindFromMap(params);
+            query.fold(this, this);
+            if (ownsTransaction) handle.commit();
+        } catch (RuntimeException e) {
+            if (ownsTransaction) rollbackQuietly(handle);
+            throw e;
+        }
+        return toResult();
+    }
+
+    public JdbiColumnarReader fold(JdbiColumnarReader reader, ResultSet rs, StatementContext ctx) throws SQLException {
+        if (indexes == null) indexes = resolve(rs.getMetaData());
+        if (rows == capacity) grow();
+        for (int c = 0; c < types.length; c++) {
+            int column = indexes[c];
+            switch (types[c]) {
+                case LONG:
+                    long l = rs.getLong(column);
+                    if (offHeap) {
+                        ((ByteBuffer) columns[c]).putLong(rows << 3, l);
+                    } else {
+                        ((long[]) columns[c])[rows] = l;
+                    }
+                    break;
+                case DOUBLE:
+                    double d = rs.getDouble(column);
+                    if (d == 0d && rs.wasNull()) d = Double.NaN;
+                    if (offHeap) {
+                        ((ByteBuffer) columns[c]).putDouble(rows << 3, d);
+                    } else {
+                        ((double[]) columns[c])[rows] = d;
+                    }
+                    break;
+                default:
+                    int n = rs.getInt(column);
+                    if (offHeap) {
+                        ((ByteBuffer) columns[c]).putInt(rows << 2, n);
+                    } else {
+                        ((int[]) columns[c])[rows] = n;
+                    }
+            }
+        }
+        rows++;
+        return this;
+    }
+
+    private int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        List<String> labels = new ArrayList<String>();
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            labels.add(metaData.getColumnLabel(column));
+        }
+        int[] resolved = new int[names.length];
+        for (int c = 0; c < names.length; c++) {
+            for (int column = 0; column < labels.size() && resolved[c] == 0; column++) {
+                if (names[c].equalsIgnoreCase(labels.get(column))) resolved[c] = column + 1;
+            }
+            if (resolved[c] == 0) {
+                throw new IllegalArgumentException("Query on datasource '" + dataSourceName + "' has no column '" + names[c] + "'. Available columns are " + labels);
+            }
+        }
+        return resolved;
+    }
+
+    private void grow() {
+        int maxCapacity = offHeap ? Integer.MAX_VALUE / 8 : Integer.MAX_VALUE - 8;
+        if (capacity >= maxCapacity) {
+            throw new IllegalStateException("Query on datasource '" + dataSourceName + "' returned more than " + capacity + " rows, which is the most a column can hold");
+        }
+        int newCapacity = (int) Math.min((long) capacity * 2, maxCapacity);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Growing columns of query on datasource '" + dataSourceName + "' to " + newCapacity + " rows");
+        }
+        for (int c = 0; c < types.length; c++) {
+            if (offHeap) {
+                ByteBuffer previous = (ByteBuffer) columns[c];
+                previous.limit(capacity * types[c].getWidth()).position(0);
+                ByteBuffer buffer = (ByteBuffer) allocate(types[c], newCapacity);
+                buffer.put(previous).clear();
+                columns[c] = buffer;
+            } else {
+                columns[c] = copyOf(columns[c], newCapacity);
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    private JdbiColumnarResult toResult() {
+        for (int c = 0; c < types.length; c++) {
+            if (offHeap) {
+                ((ByteBuffer) columns[c]).limit(rows * types[c].getWidth()).position(0);
+            } else if (rows < capacity) {
+                columns[c] = copyOf(columns[c], rows);
+            }
+        }
+        return new JdbiColumnarResult(dataSourceName, names, types, columns, rows, offHeap);
+    }
+
+    private Object allocate(ColumnType type, int size) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(size * type.getWidth()).order(ByteOrder.nativeOrder());
+        }
+        switch (type) {
+            case LONG:
+                return new long[size];
+            case DOUBLE:
+                return new double[size];
+            default:
+                return new int[size];
+        }
+    }
+
+    private static Object copyOf(Object array, int size) {
+        if (array instanceof long[]) return Arrays.copyOf((long[]) array, size);
+        if (array instanceof double[]) return Arrays.copyOf((double[]) array, size);
+        return Arrays.copyOf((int[]) array, size);
+    }
+
+    private static ColumnType columnType(String columnName, Object type) {
+        if (type == long.class || type == Long.class) return ColumnType.LONG;
+        if (type == double.class || type == Double.class) return ColumnType.DOUBLE;
+        if (type == int.class || type == Integer.class) return ColumnType.INT;
+        if (type instanceof ColumnType) return (ColumnType) type;
+        if (type instanceof CharSequence) {
+            String name = type.toString().trim();
+            for (ColumnType columnType : ColumnType.values()) {
+                if (columnType.name().equalsIgnoreCase(name)) return columnType;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported type '" + type + "' for column '" + columnName + "'. Valid types are long, double and int");
+    }
+
+    private static void rollbackQuietly(Handle handle) {
+        try {
+            if (handle.isInTransaction()) handle.rollback();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not rollback transaction", e);
+        }
+    }
+}
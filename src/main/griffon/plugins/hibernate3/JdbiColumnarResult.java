@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a {@code fetchJdbiColumns} call: one primitive column per
+ * requested column, all of them {@link #getRowCount()} long.
+ * <p>
+ * On-heap columns are exact-size {@code long[]}, {@code double[]} or
+ * {@code int[]} arrays. Off-heap columns are direct {@code ByteBuffer}s in
+ * native byte order, positioned at zero with their limit at the end of the
+ * data; use {@code asLongBuffer()}, {@code asDoubleBuffer()} or
+ * {@code asIntBuffer()} for typed access.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiColumnarResult {
+    public enum ColumnType {
+        LONG(8), DOUBLE(8), INT(4);
+
+        private final int width;
+
+        ColumnType(int width) {
+            this.width = width;
+        }
+
+        /**
+         * Size of a value in bytes.
+         */
+        public int getWidth() {
+            return width;
+        }
+    }
+
+    private final String dataSourceName;
+    private final List<String> columnNames;
+    private final ColumnType[] types;
+    private final Object[] columns;
+    private final int rowCount;
+    private final boolean offHeap;
+
+    JdbiColumnarResult(String dataSourceName, String[] columnNames, ColumnType[] types, Object[] columns, int rowCount, boolean offHeap) {
+        this.dataSourceName = dataSourceName;
+        this.columnNames = Collections.unmodifiableList(Arrays.asList(columnNames));
+        this.types = types;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.offHeap = offHeap;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public ColumnType getColumnType(String columnName) {
+        return types[indexOf(columnName)];
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public long[] getLongs(String columnName) {
+        return (long[]) heapColumn(columnName, ColumnType.LONG);
+    }
+
+    /**
+     * Values of a {@code double} column. SQL {@code NULL}s are read as {@code NaN}.
+     */
+    public double[] getDoubles(String columnName) {
+        return (double[]) heapColumn(columnName, ColumnType.DOUBLE);
+    }
+
+    public int[] getInts(String columnName) {
+        return (int[]) heapColumn(columnName, ColumnType.INT);
+    }
+
+    /**
+     * Returns an off-heap column. Each call returns a new view over the same
+     * memory, with its own position and limit.
+     */
+    public ByteBuffer getBuffer(String columnName) {
+        int index = indexOf(columnName);
+        if (!offHeap) {
+            throw new IllegalStateException("Column '" + columnName + "' is on-heap, use getLongs, getDoubles or getInts");
+        }
+        ByteBuffer buffer = (ByteBuffer) columns[index];
+        return buffer.duplicate().order(buffer.order());
+    }
+
+    /**
+     * Groovy subscript access: returns the array, or the buffer of an off-heap
+     * column, for the given column name.
+     */
+    public Object getAt(String columnName) {
+        return offHeap ? getBuffer(columnName) : columns[indexOf(columnName)];
+    }
+
+    public String toString() {
+        return "JdbiColumnarResult[" + dataSourceName + ", columns=" + columnNames + ", rows=" + rowCount +
+            (offHeap ? ", off-heap" : "") + "]";
+    }
+
+    private Object heapColumn(String columnName, ColumnType type) {
+        int index = indexOf(columnName);
+        if (offHeap) {
+            throw new IllegalStateException("Column '" + columnName + "' is off-heap, use getBuffer");
+        }
+        if (types[index] != type) {
+            throw new IllegalArgumentException("Column '" + columnName + "' holds " + types[index].name().toLowerCase() + " values, not " + type.name().toLowerCase());
+        }
+        return columns[index];
+    }
+
+    private int indexOf(String columnName) {
+        int index = columnNames.indexOf(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("No such column '" + columnName + "'. Available columns are " + columnNames);
+        }
+        return index;
+    }
+}
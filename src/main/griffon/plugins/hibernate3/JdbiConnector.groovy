@@ -19,10 +19,28 @@ package griffon.plugins.jdbi
 import griffon.plugins.datasource.DataSourceConnector
 import griffon.plugins.datasource.DataSourceHolder
 import org.skife.jdbi.v2.DBI
+import org.skife.jdbi.v2.ColonPrefixNamedParamStatementRewriter
+import org.skife.jdbi.v2.tweak.StatementRewriter
 import griffon.util.ConfigUtils
 import griffon.core.GriffonApplication
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
 
 import javax.sql.DataSource
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+import static griffon.util.GriffonNameUtils.isBlank
 
 /**
  * @author Andres Almiray
@@ -30,36 +48,506 @@ import javax.sql.DataSource
 @Singleton
 final class JdbiConnector {
     private static final String DEFAULT = 'default'
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiConnector)
+    // settings given to reconnect, in effect until the datasource is disconnected
+    private static final ConcurrentMap<String, ConfigObject> RECONFIGURATIONS = new ConcurrentHashMap<String, ConfigObject>()
+    private final ConcurrentMap<String, FutureTask<DBI>> pendingConnections = new ConcurrentHashMap<String, FutureTask<DBI>>()
+    // names under which reconnected pools are known to the datasource plugin
+    private final ConcurrentMap<String, String> pooledNames = new ConcurrentHashMap<String, String>()
+    private final AtomicInteger generations = new AtomicInteger()
+    // DBIs being initialised by the current thread, not yet published in JdbiHolder
+    private final ThreadLocal<Map<String, DBI>> initializing = new ThreadLocal<Map<String, DBI>>() {
+        @Override
+        protected Map<String, DBI> initialValue() {
+            new HashMap<String, DBI>()
+        }
+    }
     private bootstrap
 
     DBI connect(GriffonApplication app, String dataSourceName = DEFAULT) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        if (JdbiHolder.instance.isJdbiAvailable(dataSourceName)) {
+            return JdbiHolder.instance.getJdbi(dataSourceName)
+        }
+        // BootstrapJdbi.init may use the datasource it is initialising
+        DBI own = initializing.get().get(dataSourceName)
+        if (own != null) return own
+
+        FutureTask<DBI> task = new FutureTask<DBI>({
+            doConnect(app, dataSourceName)
+        } as Callable<DBI>)
+        FutureTask<DBI> pending = pendingConnections.putIfAbsent(dataSourceName, task)
+        if (pending == null) {
+            pending = task
+            try {
+                task.run()
+            } finally {
+                pendingConnections.remove(dataSourceName, task)
+            }
+        }
+
+        try {
+            pending.get()
+        } catch (ExecutionException e) {
+            throw e.cause
+        }
+    }
+
+    /**
+     * Connects all datasources listed in {@code griffon.jdbi.connect.onstartup}
+     * in parallel. Only those listed in {@code griffon.jdbi.connect.required}
+     * are waited for; the rest finish in the background.
+     */
+    void connectOnStartup(GriffonApplication app) {
+        List<String> dataSourceNames = resolveStartupDataSourceNames(app)
+        if (!dataSourceNames) return
+
+        List<String> required = ConfigUtils.getConfigValue(app.config, 'griffon.jdbi.connect.required', [DEFAULT]).collect { it.toString() }
+        int threads = Math.min(dataSourceNames.size(), ConfigUtils.getConfigValueAsInt(app.config, 'griffon.jdbi.connect.threads', 4))
+        ExecutorService executor = newExecutor('jdbi-connect', Math.max(threads, 1))
+
+        Map<String, Future<DBI>> connections = [:]
+        try {
+            for (String dataSourceName : dataSourceNames) {
+                final String name = dataSourceName
+                connections[name] = executor.submit({
+                    try {
+                        connect(app, name)
+                    } catch (Throwable t) {
+                        if (!required.contains(name)) LOG.error("Could not connect to datasource '$name'", t)
+                        throw t
+                    }
+                } as Callable<DBI>)
+            }
+        } finally {
+            executor.shutdown()
+        }
+
+        for (String dataSourceName : dataSourceNames) {
+            if (!required.contains(dataSourceName)) continue
+            try {
+                connections[dataSourceName].get()
+            } catch (ExecutionException e) {
+                throw e.cause
+            }
+        }
+    }
+
+    private DBI doConnect(GriffonApplication app, String dataSourceName) {
         if (JdbiHolder.instance.isJdbiAvailable(dataSourceName)) {
             return JdbiHolder.instance.getJdbi(dataSourceName)
         }
 
+        long start = System.nanoTime()
         ConfigObject config = DataSourceConnector.instance.createConfig(app)
         DataSource dataSource = DataSourceConnector.instance.connect(app, config, dataSourceName)
 
         app.event('JdbiConnectStart', [dataSourceName, dataSource])
         DBI dbi = new DBI(dataSource)
+        ConfigObject settings = dataSourceConfig(config, dataSourceName)
+        ConfigObject jdbiConfig = jdbiConfig(config, dataSourceName)
+        // callers waiting on this connect must not get the DBI before it is fully initialised
+        initializing.get().put(dataSourceName, dbi)
+        try {
+            JdbiHolder.instance.setDataSourceConfig(dataSourceName, settings)
+            configureJdbi(app, dbi, dataSourceName, jdbiConfig)
+            JdbiHolder.instance.setBulkhead(dataSourceName, createBulkhead(dataSourceName, jdbiConfig))
+            JdbiHolder.instance.createJdbiDaos(dbi, daoClasses(app, dataSourceName, jdbiConfig))
+            resolveBootstrap(app).init(dataSourceName, dbi)
+        } catch (Throwable t) {
+            JdbiHolder.instance.discardJdbiDaos(dbi)
+            JdbiHolder.instance.setBulkhead(dataSourceName, null)
+            JdbiHolder.instance.setDataSourceConfig(dataSourceName, null)
+            DataSourceConnector.instance.disconnect(app, config, dataSourceName)
+            throw t
+        } finally {
+            initializing.get().remove(dataSourceName)
+        }
+        JdbiHolder.instance.setWriteBehind(dataSourceName, createWriteBehind(dataSourceName, jdbiConfig))
         JdbiHolder.instance.setJdbi(dataSourceName, dbi)
-        bootstrap = app.class.classLoader.loadClass('BootstrapJdbi').newInstance()
-        bootstrap.metaClass.app = app
-        resolveJdbiProvider(app).withJdbi(dataSourceName) { dsName, jdbi -> bootstrap.init(dsName, jdbi) }
-        app.event('JdbiConnectEnd', [dataSourceName, dataSource])
+        JdbiWarmUp.Result warmUp = warmUp(app, dataSourceName, dataSource, settings)
+        startProber(app, dataSourceName, dataSource, settings)
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        if (LOG.debugEnabled) LOG.debug("Connected to datasource '$dataSourceName' in ${elapsed}ms")
+        app.event('JdbiConnectEnd', [dataSourceName, dataSource, elapsed, warmUp])
         dbi
     }
 
+    /**
+     * Warms up the pool as configured in the {@code jdbi.warmUp} block.
+     * Returns {@code null} when warm-up is disabled.
+     */
+    private JdbiWarmUp.Result warmUp(GriffonApplication app, String dataSourceName, DataSource dataSource, ConfigObject dataSourceConfig) {
+        ConfigObject jdbiConfig = dataSourceConfig.jdbi instanceof ConfigObject ? dataSourceConfig.jdbi : new ConfigObject()
+        String validationQuery = ConfigUtils.getConfigValueAsString(jdbiConfig, 'warmUp.validationQuery',
+            ConfigUtils.getConfigValueAsString(dataSourceConfig, 'pool.validationQuery', ''))
+
+        JdbiWarmUp.Result result = null
+        int connections = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'warmUp.connections', 0)
+        if (connections > 0) {
+            def statements = jdbiConfig.warmUp.statements
+            statements = statements instanceof Collection ? statements.collect { String.valueOf(it) } : []
+            result = JdbiWarmUp.run(dataSourceName, dataSource, connections, validationQuery, statements,
+                ConfigUtils.getConfigValueAsInt(jdbiConfig, 'warmUp.timeout', 30))
+        }
+        result
+    }
+
+    /**
+     * Starts the health prober configured in the {@code jdbi.healthCheck}
+     * block, replacing the one of the given datasource if any; stops it when
+     * the new settings do not ask for one.
+     */
+    private void startProber(GriffonApplication app, String dataSourceName, DataSource dataSource, ConfigObject dataSourceConfig) {
+        ConfigObject jdbiConfig = dataSourceConfig.jdbi instanceof ConfigObject ? dataSourceConfig.jdbi : new ConfigObject()
+        int interval = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'healthCheck.interval', 0)
+        if (interval <= 0) {
+            JdbiHealthProber.instance.stop(dataSourceName)
+            return
+        }
+        String validationQuery = ConfigUtils.getConfigValueAsString(jdbiConfig, 'warmUp.validationQuery',
+            ConfigUtils.getConfigValueAsString(dataSourceConfig, 'pool.validationQuery', ''))
+        int minIdle = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'healthCheck.minIdle',
+            ConfigUtils.getConfigValueAsInt(dataSourceConfig, 'pool.minIdle', 0))
+        JdbiHealthProber.instance.start(app, dataSourceName, dataSource, interval, minIdle, validationQuery)
+    }
+
     void disconnect(GriffonApplication app, String dataSourceName = DEFAULT) {
+        disconnect(app, dataSourceName, ConfigUtils.getConfigValueAsInt(app.config, 'griffon.jdbi.shutdown.gracePeriod', 5000))
+    }
+
+    /**
+     * Disconnects a datasource gracefully: new calls are refused right away,
+     * calls in flight get up to {@code gracePeriod} milliseconds to finish,
+     * then {@code BootstrapJdbi.destroy} runs and the pool is closed.
+     */
+    void disconnect(GriffonApplication app, String dataSourceName, long gracePeriod) {
         if (!JdbiHolder.instance.isJdbiAvailable(dataSourceName)) return
 
-        DBI dbi = JdbiHolder.instance.getJdbi(dataSourceName)
         app.event('JdbiDisconnectStart', [dataSourceName])
-        resolveJdbiProvider(app).withJdbi(dataSourceName) { dsName, jdbi -> bootstrap.destroy(dsName, jdbi) }
-        JdbiHolder.instance.disconnectJdbi(dataSourceName)
-        app.event('JdbiDisconnectEnd', [dataSourceName])
+        int pending = JdbiHolder.instance.drainJdbi(dataSourceName, gracePeriod)
+        if (pending > 0) LOG.warn("Disconnecting datasource '$dataSourceName' with $pending call(s) still in flight after ${gracePeriod}ms")
+        try {
+            // calls that finished during the drain may have queued writes, flush them while the pool is up
+            JdbiHolder.instance.getWriteBehind(dataSourceName)?.close()
+            JdbiHolder.instance.setWriteBehind(dataSourceName, null)
+            JdbiHealthProber.instance.stop(dataSourceName)
+            // the provider may run bodies on another thread, which does not hold the lease of the drain
+            resolveBootstrap(app).destroy(dataSourceName, JdbiHolder.instance.getJdbi(dataSourceName))
+            JdbiHolder.instance.disconnectJdbi(dataSourceName)
+            JdbiHolder.instance.setBulkhead(dataSourceName, null)
+            JdbiHolder.instance.setDataSourceConfig(dataSourceName, null)
+            JdbiExecutors.instance.shutdown(dataSourceName)
+            JdbiTimingCollector.unregister(dataSourceName)
+            JdbiCachingStatementRewriter.unregister(dataSourceName)
+            JdbiTemplateStatementLocator.unregister(dataSourceName)
+            app.event('JdbiDisconnectEnd', [dataSourceName])
+            ConfigObject config = createConfig(app)
+            DataSourceConnector.instance.disconnect(app, config, pooledNames.remove(dataSourceName) ?: dataSourceName)
+            RECONFIGURATIONS.remove(dataSourceName)
+        } finally {
+            JdbiHolder.instance.undrainJdbi(dataSourceName)
+        }
+    }
+
+    /**
+     * Replaces the pool of a connected datasource while it is in use. The
+     * given settings are merged over the current ones, e.g.
+     * {@code [pool: [maxActive: 50]]}, and a new pool is built and warmed up
+     * next to the current one. Then the DBI is swapped in {@code JdbiHolder},
+     * so that new calls use the new pool, while calls already in flight finish
+     * on the old one, which is closed once they are done or once
+     * {@code griffon.jdbi.shutdown.gracePeriod} elapses. {@code BootstrapJdbi}
+     * is not run again. Triggers {@code JdbiReconnectStart} and
+     * {@code JdbiReconnectEnd} events.
+     */
+    synchronized DBI reconnect(GriffonApplication app, String dataSourceName, Map newConfig) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        if (!JdbiHolder.instance.isJdbiAvailable(dataSourceName)) {
+            throw new IllegalStateException("Cannot reconnect datasource '$dataSourceName', it is not connected")
+        }
+
+        long start = System.nanoTime()
+        ConfigObject config = createConfig(app)
+        // merge shares nested blocks, copies keep the current settings and the given ones untouched
+        ConfigObject settings = copyConfig(dataSourceConfig(config, dataSourceName))
+        if (newConfig) settings.merge(copyConfig(newConfig))
+        app.event('JdbiReconnectStart', [dataSourceName, settings])
+
+        // the datasource plugin keeps one pool per name, the new pool gets a name of its own
+        String previousName = pooledNames.get(dataSourceName) ?: dataSourceName
+        String pooledName = dataSourceName + '@' + generations.incrementAndGet()
+        ConfigObject pooledConfig = withPool(config, pooledName, settings)
+        DataSource dataSource = DataSourceConnector.instance.connect(app, pooledConfig, pooledName)
+
+        DBI dbi = new DBI(dataSource)
+        ConfigObject jdbiConfig = settings.jdbi instanceof ConfigObject ? settings.jdbi : new ConfigObject()
+        JdbiWarmUp.Result warmUp
+        JdbiBulkhead bulkhead
+        try {
+            configureJdbi(app, dbi, dataSourceName, jdbiConfig)
+            warmUp = warmUp(app, dataSourceName, dataSource, settings)
+            bulkhead = createBulkhead(dataSourceName, jdbiConfig)
+            JdbiHolder.instance.createJdbiDaos(dbi, daoClasses(app, dataSourceName, jdbiConfig))
+        } catch (Exception e) {
+            // keep serving from the current pool, whose prober is still running
+            JdbiHolder.instance.discardJdbiDaos(dbi)
+            DataSourceConnector.instance.disconnect(app, pooledConfig, pooledName)
+            throw e
+        }
+
+        RECONFIGURATIONS.put(dataSourceName, settings)
+        JdbiHolder.instance.setDataSourceConfig(dataSourceName, settings)
+        pooledNames.put(dataSourceName, pooledName)
+        JdbiHolder.instance.setBulkhead(dataSourceName, bulkhead)
+
+        long gracePeriod = ConfigUtils.getConfigValueAsInt(app.config, 'griffon.jdbi.shutdown.gracePeriod', 5000)
+        JdbiWriteBehind previousWriteBehind = JdbiHolder.instance.getWriteBehind(dataSourceName)
+        JdbiHolder.instance.setWriteBehind(dataSourceName, createWriteBehind(dataSourceName, jdbiConfig))
+        int pending = JdbiHolder.instance.swapJdbi(dataSourceName, dbi, gracePeriod)
+        // replaces the prober of the previous pool
+        startProber(app, dataSourceName, dataSource, settings)
+        if (pending > 0) LOG.warn("Closing the previous pool of datasource '$dataSourceName' with $pending call(s) still in flight after ${gracePeriod}ms")
+        // queued async calls still run, the next ones use the new async settings
+        JdbiExecutors.instance.shutdown(dataSourceName)
+        // writes queued before the swap are flushed to the new pool
+        previousWriteBehind?.close()
+        DataSourceConnector.instance.disconnect(app, config, previousName)
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        if (LOG.debugEnabled) LOG.debug("Reconnected datasource '$dataSourceName' in ${elapsed}ms")
+        app.event('JdbiReconnectEnd', [dataSourceName, dataSource, elapsed, warmUp])
+        dbi
+    }
+
+    /**
+     * Refuses any further call and connection, then disconnects every
+     * connected datasource in parallel. Each one gets the grace period set in
+     * {@code griffon.jdbi.shutdown.gracePeriod}; datasources that are not
+     * done once {@code griffon.jdbi.shutdown.timeout} elapses are left behind,
+     * so that shutdown never takes longer than that.
+     */
+    void disconnectAll(GriffonApplication app) {
+        JdbiHolder.instance.shuttingDown = true
+        List<String> dataSourceNames = JdbiHolder.instance.jdbiNames as List
+        if (!dataSourceNames) return
+
+        long gracePeriod = ConfigUtils.getConfigValueAsInt(app.config, 'griffon.jdbi.shutdown.gracePeriod', 5000)
+        long timeout = Math.max(gracePeriod, ConfigUtils.getConfigValueAsInt(app.config, 'griffon.jdbi.shutdown.timeout', 10000) as long)
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)
+        ExecutorService executor = newExecutor('jdbi-shutdown', dataSourceNames.size())
+
+        Map<String, Future<?>> disconnections = [:]
+        try {
+            for (String dataSourceName : dataSourceNames) {
+                final String name = dataSourceName
+                disconnections[name] = executor.submit({ disconnect(app, name, gracePeriod) } as Runnable)
+            }
+        } finally {
+            executor.shutdown()
+        }
+
+        for (String dataSourceName : dataSourceNames) {
+            Future<?> disconnection = disconnections[dataSourceName]
+            try {
+                disconnection.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+            } catch (TimeoutException e) {
+                disconnection.cancel(true)
+                LOG.warn("Datasource '$dataSourceName' did not disconnect within ${timeout}ms, giving up on it")
+            } catch (ExecutionException e) {
+                LOG.error("Could not disconnect datasource '$dataSourceName'", e.cause)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt()
+                LOG.warn("Interrupted while disconnecting datasources")
+                break
+            }
+        }
+    }
+
+    /**
+     * Returns the config of the datasource plugin, including the pools built
+     * by {@code reconnect}. The config of the datasource plugin is shared, the
+     * pools are added to a copy of it.
+     */
+    private ConfigObject createConfig(GriffonApplication app) {
         ConfigObject config = DataSourceConnector.instance.createConfig(app)
-        DataSourceConnector.instance.disconnect(app, config, dataSourceName)
+        pooledNames.each { String dataSourceName, String pooledName ->
+            ConfigObject settings = RECONFIGURATIONS.get(dataSourceName)
+            if (settings != null) config = withPool(config, pooledName, settings)
+        }
+        config
+    }
+
+    /**
+     * Returns a shallow copy of the given config whose {@code dataSources}
+     * block has the given settings under the given name too.
+     */
+    private static ConfigObject withPool(ConfigObject config, String pooledName, ConfigObject settings) {
+        ConfigObject dataSources = new ConfigObject()
+        def current = config.get('dataSources')
+        if (current instanceof Map) dataSources.putAll(current)
+        dataSources.put(pooledName, settings)
+        ConfigObject copy = new ConfigObject()
+        copy.putAll(config)
+        copy.put('dataSources', dataSources)
+        copy
+    }
+
+    private static ConfigObject copyConfig(Map map) {
+        ConfigObject config = new ConfigObject()
+        map.each { key, value ->
+            if (value instanceof Map) {
+                value = copyConfig((Map) value)
+            } else if (value instanceof Collection) {
+                value = new ArrayList(value)
+            }
+            config.put(String.valueOf(key), value)
+        }
+        config
+    }
+
+    private void configureJdbi(GriffonApplication app, DBI dbi, String dataSourceName, ConfigObject jdbiConfig) {
+        dbi.registerMapper(JdbiRowMapperFactory.instance)
+
+        if (ConfigUtils.getConfigValueAsBoolean(jdbiConfig, 'timing.enabled', true)) {
+            JdbiTimingCollector collector = new JdbiTimingCollector(dataSourceName,
+                ConfigUtils.getConfigValueAsInt(jdbiConfig, 'timing.slowQueryThreshold', 1000),
+                ConfigUtils.getConfigValueAsInt(jdbiConfig, 'timing.maxStatements', 500))
+            dbi.timingCollector = collector
+            JdbiTimingCollector.register(dataSourceName, collector)
+        }
+
+        StatementRewriter statementRewriter = null
+        if (ConfigUtils.getConfigValueAsBoolean(jdbiConfig, 'statementCache.enabled', false)) {
+            JdbiCachingStatementRewriter rewriter = new JdbiCachingStatementRewriter(ConfigUtils.getConfigValueAsInt(jdbiConfig, 'statementCache.size', 256))
+            dbi.statementRewriter = rewriter
+            statementRewriter = rewriter
+            JdbiCachingStatementRewriter.register(dataSourceName, rewriter)
+        }
+
+        if (ConfigUtils.getConfigValueAsBoolean(app.config, 'griffon.jdbi.tracing.enabled', false)) {
+            dbi.statementRewriter = new JdbiTracingStatementRewriter(statementRewriter ?: new ColonPrefixNamedParamStatementRewriter(),
+                ConfigUtils.getConfigValueAsBoolean(app.config, 'griffon.jdbi.tracing.sqlComment', false))
+        }
+
+        String templatesPath = ConfigUtils.getConfigValueAsString(jdbiConfig, 'templates.path', '')
+        if (templatesPath) {
+            JdbiTemplateStatementLocator locator = new JdbiTemplateStatementLocator(templatesPath, app.class.classLoader)
+            dbi.statementLocator = locator
+            JdbiTemplateStatementLocator.register(dataSourceName, locator)
+        }
+    }
+
+    /**
+     * Resolves the SQL Object DAO classes listed in {@code jdbi.daos}, given
+     * either as classes or as class names.
+     */
+    private List<Class> daoClasses(GriffonApplication app, String dataSourceName, ConfigObject jdbiConfig) {
+        def daos = jdbiConfig.daos
+        if (!(daos instanceof Collection)) return []
+        daos.collect { dao ->
+            if (dao instanceof Class) return dao
+            try {
+                Class.forName(String.valueOf(dao), true, app.class.classLoader)
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unknown DAO class '$dao' configured for datasource '$dataSourceName'", e)
+            }
+        }
+    }
+
+    /**
+     * Creates the bulkhead configured in the {@code jdbi.bulkhead} block, or
+     * returns {@code null} when {@code maxConcurrent} is not set.
+     */
+    private JdbiBulkhead createBulkhead(String dataSourceName, ConfigObject jdbiConfig) {
+        int maxConcurrent = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'bulkhead.maxConcurrent', 0)
+        if (maxConcurrent <= 0) return null
+        int maxQueue = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'bulkhead.maxQueue', 0)
+        long timeout = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'bulkhead.timeout', 0)
+        if (!ConfigUtils.getConfigValueAsBoolean(jdbiConfig, 'bulkhead.adaptive.enabled', false)) {
+            return new JdbiBulkhead(dataSourceName, maxConcurrent, maxQueue, timeout)
+        }
+        new JdbiBulkhead(dataSourceName, maxConcurrent, maxQueue, timeout,
+            ConfigUtils.getConfigValueAsInt(jdbiConfig, 'bulkhead.adaptive.minLimit', 1),
+            ConfigUtils.getConfigValueAsInt(jdbiConfig, 'bulkhead.adaptive.maxLimit', maxConcurrent),
+            ConfigUtils.getConfigValue(jdbiConfig, 'bulkhead.adaptive.tolerance', 2.0d) as double,
+            ConfigUtils.getConfigValue(jdbiConfig, 'bulkhead.adaptive.backoff', 0.9d) as double)
+    }
+
+    /**
+     * Creates the write-behind queue configured in the {@code jdbi.writeBehind}
+     * block, or returns {@code null} when {@code maxPending} is not set.
+     */
+    private JdbiWriteBehind createWriteBehind(String dataSourceName, ConfigObject jdbiConfig) {
+        int maxPending = ConfigUtils.getConfigValueAsInt(jdbiConfig, 'writeBehind.maxPending', 0)
+        if (maxPending <= 0) return null
+        new JdbiWriteBehind(dataSourceName, maxPending,
+            ConfigUtils.getConfigValueAsInt(jdbiConfig, 'writeBehind.batchSize', 500),
+            ConfigUtils.getConfigValueAsInt(jdbiConfig, 'writeBehind.flushInterval', 1000),
+            ConfigUtils.getConfigValueAsInt(jdbiConfig, 'writeBehind.maxRetries', 3))
+    }
+
+    /**
+     * Returns the {@code jdbi} block of the given datasource as configured in
+     * {@code DataSource.groovy}, or an empty config if there is none.
+     */
+    static ConfigObject jdbiConfig(GriffonApplication app, String dataSourceName) {
+        // get() rather than .jdbi, which would add an empty block to the shared settings
+        def jdbi = dataSourceConfig(app, dataSourceName).get('jdbi')
+        jdbi instanceof ConfigObject ? jdbi : new ConfigObject()
+    }
+
+    static ConfigObject jdbiConfig(ConfigObject config, String dataSourceName) {
+        def jdbi = dataSourceConfig(config, dataSourceName).jdbi
+        jdbi instanceof ConfigObject ? jdbi : new ConfigObject()
+    }
+
+    /**
+     * Returns the settings of the given datasource as configured in
+     * {@code DataSource.groovy}, or an empty config if there are none. The
+     * settings of connected datasources are resolved once, when connecting or
+     * reconnecting; they must not be modified.
+     */
+    static ConfigObject dataSourceConfig(GriffonApplication app, String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        ConfigObject settings = JdbiHolder.instance.getDataSourceConfig(dataSourceName)
+        settings != null ? settings : dataSourceConfig(DataSourceConnector.instance.createConfig(app), dataSourceName)
+    }
+
+    static ConfigObject dataSourceConfig(ConfigObject config, String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        ConfigObject reconfiguration = RECONFIGURATIONS.get(dataSourceName)
+        if (reconfiguration != null) return reconfiguration
+        def dataSourceConfig = dataSourceName == DEFAULT ? config.dataSource : config.dataSources?.get(dataSourceName)
+        dataSourceConfig instanceof ConfigObject ? dataSourceConfig : new ConfigObject()
+    }
+
+    /**
+     * Creates the datasource group configured under {@code dataSourceGroups}
+     * in {@code DataSource.groovy}. A name without group settings results in a
+     * group whose primary is the datasource of the same name.
+     */
+    static JdbiDataSourceGroup createDataSourceGroup(GriffonApplication app, String groupName) {
+        if (isBlank(groupName)) groupName = DEFAULT
+        def groupConfig = DataSourceConnector.instance.createConfig(app).dataSourceGroups?.get(groupName)
+        if (!(groupConfig instanceof ConfigObject)) groupConfig = new ConfigObject()
+
+        String primary = ConfigUtils.getConfigValueAsString(groupConfig, 'primary', groupName)
+        def replicas = groupConfig.replicas
+        replicas = replicas instanceof Collection ? replicas.collect { String.valueOf(it) } : []
+        String balance = ConfigUtils.getConfigValueAsString(groupConfig, 'balance', 'leastInFlight')
+        JdbiDataSourceGroup.Balance strategy = balance == 'roundRobin' ? JdbiDataSourceGroup.Balance.ROUND_ROBIN : JdbiDataSourceGroup.Balance.LEAST_IN_FLIGHT
+        long quarantine = ConfigUtils.getConfigValueAsInt(groupConfig, 'quarantine', 30000i)
+        new JdbiDataSourceGroup(groupName, primary, replicas as String[], strategy, quarantine)
+    }
+
+    /**
+     * Returns the {@code shards} block of {@code DataSource.groovy}, or an
+     * empty config if there is none.
+     */
+    static ConfigObject shardsConfig(GriffonApplication app) {
+        def shards = DataSourceConnector.instance.createConfig(app).shards
+        shards instanceof ConfigObject ? shards : new ConfigObject()
     }
 
     JdbiProvider resolveJdbiProvider(GriffonApplication app) {
@@ -73,4 +561,22 @@ final class JdbiConnector {
         }
         jdbiProvider
     }
+
+    private List<String> resolveStartupDataSourceNames(GriffonApplication app) {
+        def onstartup = ConfigUtils.getConfigValue(app.config, 'griffon.jdbi.connect.onstartup', true)
+        if (onstartup instanceof Collection) return onstartup.collect { it.toString() }.unique()
+        ConfigUtils.getConfigValueAsBoolean(app.config, 'griffon.jdbi.connect.onstartup', true) ? [DEFAULT] : []
+    }
+
+    private synchronized resolveBootstrap(GriffonApplication app) {
+        if (bootstrap == null) {
+            bootstrap = app.class.classLoader.loadClass('BootstrapJdbi').newInstance()
+            bootstrap.metaClass.app = app
+        }
+        bootstrap
+    }
+
+    static ExecutorService newExecutor(String prefix, int threads) {
+        new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new JdbiThreadFactory(prefix))
+    }
 }
@@ -18,6 +18,10 @@ package griffon.plugins.jdbi;
 
 import griffon.util.CallableWithArgs;
 import groovy.lang.Closure;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Andres Almiray
@@ -50,4 +54,196 @@ public class JdbiContributionAdapter implements JdbiContributionHandler {
     public <R> R withJdbi(String dataSourceName, CallableWithArgs<R> callable) {
         return provider.withJdbi(dataSourceName, callable);
     }
-}
\ No newline at end of file
+
+    public <R> R withJdbiHandle(Closure<R> closure) {
+        return withJdbiHandle(DEFAULT, closure);
+    }
+
+    public <R> R withJdbiHandle(String dataSourceName, Closure<R> closure) {
+        return provider.withJdbiHandle(dataSourceName, closure);
+    }
+
+    public <R> R withJdbiHandle(CallableWithArgs<R> callable) {
+        return withJdbiHandle(DEFAULT, callable);
+    }
+
+    public <R> R withJdbiHandle(String dataSourceName, CallableWithArgs<R> callable) {
+        return provider.withJdbiHandle(dataSourceName, callable);
+    }
+
+    public <R> R withJdbiTransaction(Closure<R> closure) {
+        return withJdbiTransaction(DEFAULT, closure);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, Closure<R> closure) {
+        return provider.withJdbiTransaction(dataSourceName, closure);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, TransactionIsolationLevel isolation, Closure<R> closure) {
+        return provider.withJdbiTransaction(dataSourceName, isolation, closure);
+    }
+
+    public <R> R withJdbiTransaction(CallableWithArgs<R> callable) {
+        return withJdbiTransaction(DEFAULT, callable);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, CallableWithArgs<R> callable) {
+        return provider.withJdbiTransaction(dataSourceName, callable);
+    }
+
+    public <R> R withJdbiTransaction(String dataSourceName, TransactionIsolationLevel isolation, CallableWithArgs<R> callable) {
+        return provider.withJdbiTransaction(dataSourceName, isolation, callable);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(Closure<R> closure) {
+        return withJdbiAsync(DEFAULT, closure);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, Closure<R> closure) {
+        return provider.withJdbiAsync(dataSourceName, closure);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(CallableWithArgs<R> callable) {
+        return withJdbiAsync(DEFAULT, callable);
+    }
+
+    public <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, CallableWithArgs<R> callable) {
+        return provider.withJdbiAsync(dataSourceName, callable);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, Closure<?> progress) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress) {
+        return withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize) {
+        return provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize, Closure<?> progress) {
+        return provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize, progress);
+    }
+
+    public JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress) {
+        return provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize, progress);
+    }
+
+    public <R> R withJdbiStream(String sql, Map<String, ?> params, Closure<R> closure) {
+        return withJdbiStream(DEFAULT, sql, params, closure);
+    }
+
+    public <R> R withJdbiStream(String dataSourceName, String sql, Map<String, ?> params, Closure<R> closure) {
+        return provider.withJdbiStream(dataSourceName, sql, params, closure);
+    }
+
+    public <R> R withJdbiStream(String sql, Map<String, ?> params, CallableWithArgs<R> callable) {
+        return withJdbiStream(DEFAULT, sql, params, callable);
+    }
+
+    public <R> R withJdbiStream(String dataSourceName, String sql, Map<String, ?> params, CallableWithArgs<R> callable) {
+        return provider.withJdbiStream(dataSourceName, sql, params, callable);
+    }
+
+    public JdbiResultStream<Map<String, Object>> openJdbiStream(String sql, Map<String, ?> params) {
+        return openJdbiStream(DEFAULT, sql, params);
+    }
+
+    public JdbiResultStream<Map<String, Object>> openJdbiStream(String dataSourceName, String sql, Map<String, ?> params) {
+        return provider.openJdbiStream(dataSourceName, sql, params);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns) {
+        return fetchJdbiColumns(DEFAULT, sql, params, columns, false);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap) {
+        return fetchJdbiColumns(DEFAULT, sql, params, columns, offHeap);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns) {
+        return fetchJdbiColumns(dataSourceName, sql, params, columns, false);
+    }
+
+    public JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap) {
+        return provider.fetchJdbiColumns(dataSourceName, sql, params, columns, offHeap);
+    }
+
+    public <R> R withJdbiReadOnly(Closure<R> closure) {
+        return withJdbiReadOnly(DEFAULT, closure);
+    }
+
+    public <R> R withJdbiReadOnly(String groupName, Closure<R> closure) {
+        return provider.withJdbiReadOnly(groupName, closure);
+    }
+
+    public <R> R withJdbiReadOnly(CallableWithArgs<R> callable) {
+        return withJdbiReadOnly(DEFAULT, callable);
+    }
+
+    public <R> R withJdbiReadOnly(String groupName, CallableWithArgs<R> callable) {
+        return provider.withJdbiReadOnly(groupName, callable);
+    }
+
+    public JdbiFanOutResult withJdbiAll(Map<String, ?> bodies) {
+        return provider.withJdbiAll(bodies);
+    }
+
+    public JdbiFanOutResult withJdbiAll(Map<String, ?> bodies, long timeoutMillis) {
+        return provider.withJdbiAll(bodies, timeoutMillis);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure) {
+        return provider.withJdbiEach(dataSourceNames, closure);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure, long timeoutMillis) {
+        return provider.withJdbiEach(dataSourceNames, closure, timeoutMillis);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable) {
+        return provider.withJdbiEach(dataSourceNames, callable);
+    }
+
+    public JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable, long timeoutMillis) {
+        return provider.withJdbiEach(dataSourceNames, callable, timeoutMillis);
+    }
+
+    public <T, R> R withJdbiDao(Class<T> daoClass, Closure<R> closure) {
+        return provider.withJdbiDao(daoClass, closure);
+    }
+
+    public <T, R> R withJdbiDao(String dataSourceName, Class<T> daoClass, Closure<R> closure) {
+        return provider.withJdbiDao(dataSourceName, daoClass, closure);
+    }
+
+    public <T, R> R withJdbiDao(Class<T> daoClass, CallableWithArgs<R> callable) {
+        return provider.withJdbiDao(daoClass, callable);
+    }
+
+    public <T, R> R withJdbiDao(String dataSourceName, Class<T> daoClass, CallableWithArgs<R> callable) {
+        return provider.withJdbiDao(dataSourceName, daoClass, callable);
+    }
+
+    public <T> T getJdbiDao(Class<T> daoClass) {
+        return provider.getJdbiDao(daoClass);
+    }
+
+    public <T> T getJdbiDao(String dataSourceName, Class<T> daoClass) {
+        return provider.getJdbiDao(dataSourceName, daoClass);
+    }
+
+    public JdbiWriteBehind getJdbiWriteBehind() {
+        return getJdbiWriteBehind(DEFAULT);
+    }
+
+    public JdbiWriteBehind getJdbiWriteBehind(String dataSourceName) {
+        return provider.getJdbiWriteBehind(dataSourceName);
+    }
+}
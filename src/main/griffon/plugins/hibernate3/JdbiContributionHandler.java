@@ -18,6 +18,10 @@ package griffon.plugins.jdbi;
 
 import griffon.util.CallableWithArgs;
 import groovy.lang.Closure;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Andres Almiray
@@ -34,4 +38,100 @@ public interface JdbiContributionHandler {
     <R> R withJdbi(CallableWithArgs<R> callable);
 
     <R> R withJdbi(String dataSourceName, CallableWithArgs<R> callable);
-}
\ No newline at end of file
+
+    <R> R withJdbiHandle(Closure<R> closure);
+
+    <R> R withJdbiHandle(String dataSourceName, Closure<R> closure);
+
+    <R> R withJdbiHandle(CallableWithArgs<R> callable);
+
+    <R> R withJdbiHandle(String dataSourceName, CallableWithArgs<R> callable);
+
+    <R> R withJdbiTransaction(Closure<R> closure);
+
+    <R> R withJdbiTransaction(String dataSourceName, Closure<R> closure);
+
+    <R> R withJdbiTransaction(String dataSourceName, TransactionIsolationLevel isolation, Closure<R> closure);
+
+    <R> R withJdbiTransaction(CallableWithArgs<R> callable);
+
+    <R> R withJdbiTransaction(String dataSourceName, CallableWithArgs<R> callable);
+
+    <R> R withJdbiTransaction(String dataSourceName, TransactionIsolationLevel isolation, CallableWithArgs<R> callable);
+
+    <R> JdbiFuture<R> withJdbiAsync(Closure<R> closure);
+
+    <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, Closure<R> closure);
+
+    <R> JdbiFuture<R> withJdbiAsync(CallableWithArgs<R> callable);
+
+    <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, CallableWithArgs<R> callable);
+
+    JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize);
+
+    JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, Closure<?> progress);
+
+    JdbiBatchResult withJdbiBatch(String sql, Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress);
+
+    JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize);
+
+    JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize, Closure<?> progress);
+
+    JdbiBatchResult withJdbiBatch(String dataSourceName, String sql, Iterable<?> rows, int chunkSize, CallableWithArgs<?> progress);
+
+    <R> R withJdbiStream(String sql, Map<String, ?> params, Closure<R> closure);
+
+    <R> R withJdbiStream(String dataSourceName, String sql, Map<String, ?> params, Closure<R> closure);
+
+    <R> R withJdbiStream(String sql, Map<String, ?> params, CallableWithArgs<R> callable);
+
+    <R> R withJdbiStream(String dataSourceName, String sql, Map<String, ?> params, CallableWithArgs<R> callable);
+
+    JdbiResultStream<Map<String, Object>> openJdbiStream(String sql, Map<String, ?> params);
+
+    JdbiResultStream<Map<String, Object>> openJdbiStream(String dataSourceName, String sql, Map<String, ?> params);
+
+    JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns);
+
+    JdbiColumnarResult fetchJdbiColumns(String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap);
+
+    JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns);
+
+    JdbiColumnarResult fetchJdbiColumns(String dataSourceName, String sql, Map<String, ?> params, Map<String, ?> columns, boolean offHeap);
+
+    <R> R withJdbiReadOnly(Closure<R> closure);
+
+    <R> R withJdbiReadOnly(String groupName, Closure<R> closure);
+
+    <R> R withJdbiReadOnly(CallableWithArgs<R> callable);
+
+    <R> R withJdbiReadOnly(String groupName, CallableWithArgs<R> callable);
+
+    JdbiFanOutResult withJdbiAll(Map<String, ?> bodies);
+
+    JdbiFanOutResult withJdbiAll(Map<String, ?> bodies, long timeoutMillis);
+
+    JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure);
+
+    JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, Closure<?> closure, long timeoutMillis);
+
+    JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable);
+
+    JdbiFanOutResult withJdbiEach(List<String> dataSourceNames, CallableWithArgs<?> callable, long timeoutMillis);
+
+    <T, R> R withJdbiDao(Class<T> daoClass, Closure<R> closure);
+
+    <T, R> R withJdbiDao(String dataSourceName, Class<T> daoClass, Closure<R> closure);
+
+    <T, R> R withJdbiDao(Class<T> daoClass, CallableWithArgs<R> callable);
+
+    <T, R> R withJdbiDao(String dataSourceName, Class<T> daoClass, CallableWithArgs<R> callable);
+
+    <T> T getJdbiDao(Class<T> daoClass);
+
+    <T> T getJdbiDao(String dataSourceName, Class<T> daoClass);
+
+    JdbiWriteBehind getJdbiWriteBehind();
+
+    JdbiWriteBehind getJdbiWriteBehind(String dataSourceName);
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A primary datasource and its read replicas. Reads are spread across the
+ * replicas that are not quarantined, either in turns or by picking the one
+ * with the fewest calls in flight; when none is available reads fall back to
+ * the primary.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiDataSourceGroup {
+    public enum Balance {
+        ROUND_ROBIN, LEAST_IN_FLIGHT
+    }
+
+    static final int PRIMARY = -1;
+
+    private final String name;
+    private final String primary;
+    private final String[] replicas;
+    private final Balance balance;
+    private final long quarantineMillis;
+    private final AtomicIntegerArray inFlight;
+    private final AtomicLongArray quarantinedUntil;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public JdbiDataSourceGroup(String name, String primary, String[] replicas, Balance balance, long quarantineMillis) {
+        this.name = name;
+        this.primary = primary;
+        this.replicas = replicas != null ? replicas.clone() : new String[0];
+        this.balance = balance != null ? balance : Balance.LEAST_IN_FLIGHT;
+        this.quarantineMillis = quarantineMillis;
+        this.inFlight = new AtomicIntegerArray(this.replicas.length);
+        this.quarantinedUntil = new AtomicLongArray(this.replicas.length);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPrimary() {
+        return primary;
+    }
+
+    public String[] getReplicas() {
+        return replicas.clone();
+    }
+
+    public Balance getBalance() {
+        return balance;
+    }
+
+    public int getInFlight(String replica) {
+        int index = indexOf(replica);
+        return index != PRIMARY ? inFlight.get(index) : 0;
+    }
+
+    public boolean isQuarantined(String replica) {
+        int index = indexOf(replica);
+        return index != PRIMARY && quarantinedUntil.get(index) > System.currentTimeMillis();
+    }
+
+    /**
+     * Picks a replica and counts a call in flight on it. Returns {@code PRIMARY}
+     * when there are no replicas in rotation.
+     */
+    int acquire() {
+        int size = replicas.length;
+        if (size == 0) return PRIMARY;
+
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        int selected = PRIMARY;
+        int selectedLoad = Integer.MAX_VALUE;
+        long now = 0L;
+        for (int i = 0; i < size; i++) {
+            int candidate = (start + i) % size;
+            long until = quarantinedUntil.get(candidate);
+            if (until != 0L) {
+                if (now == 0L) now = System.currentTimeMillis();
+                if (now < until) continue;
+                quarantinedUntil.compareAndSet(candidate, until, 0L);
+            }
+            if (balance == Balance.ROUND_ROBIN) {
+                selected = candidate;
+                break;
+            }
+            int load = inFlight.get(candidate);
+            if (load < selectedLoad) {
+                selected = candidate;
+                selectedLoad = load;
+                if (load == 0) break;
+            }
+        }
+        if (selected != PRIMARY) inFlight.incrementAndGet(selected);
+        return selected;
+    }
+
+    void release(int replica) {
+        if (replica != PRIMARY) inFlight.decrementAndGet(replica);
+    }
+
+    /**
+     * Takes a replica out of rotation for the configured quarantine period.
+     */
+    void quarantine(int replica) {
+        if (replica != PRIMARY) quarantinedUntil.set(replica, System.currentTimeMillis() + quarantineMillis);
+    }
+
+    String nameOf(int replica) {
+        return replica != PRIMARY ? replicas[replica] : primary;
+    }
+
+    private int indexOf(String replica) {
+        for (int i = 0; i < replicas.length; i++) {
+            if (replicas[i].equals(replica)) return i;
+        }
+        return PRIMARY;
+    }
+
+    public String toString() {
+        StringBuilder b = new StringBuilder("JdbiDataSourceGroup[name=").append(name)
+            .append(", primary=").append(primary).append(", replicas=[");
+        for (int i = 0; i < replicas.length; i++) {
+            if (i > 0) b.append(", ");
+            b.append(replicas[i]);
+        }
+        return b.append("], balance=").append(balance).append("]").toString();
+    }
+}
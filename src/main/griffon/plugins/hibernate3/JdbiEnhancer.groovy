@@ -17,6 +17,7 @@
 package griffon.plugins.jdbi
 
 import griffon.util.CallableWithArgs
+import org.skife.jdbi.v2.TransactionIsolationLevel
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -29,6 +30,20 @@ final class JdbiEnhancer {
 
     private JdbiEnhancer() {}
     
+    /**
+     * Registers meta methods that call the provider directly instead of going
+     * through closures. Requires an {@code ExpandoMetaClass}; any other kind
+     * of metaclass is enhanced with closures.
+     */
+    static void enhanceDirect(MetaClass mc, JdbiProvider provider = DefaultJdbiProvider.instance) {
+        if (!(mc instanceof ExpandoMetaClass)) {
+            enhance(mc, provider)
+            return
+        }
+        if (LOG.debugEnabled) LOG.debug("Enhancing $mc with $provider (direct)")
+        JdbiMetaMethods.register((ExpandoMetaClass) mc, provider)
+    }
+
     static void enhance(MetaClass mc, JdbiProvider provider = DefaultJdbiProvider.instance) {
         if (LOG.debugEnabled) LOG.debug("Enhancing $mc with $provider")
         mc.withJdbi = {Closure closure ->
@@ -43,5 +58,149 @@ final class JdbiEnhancer {
         mc.withJdbi << {String dataSourceName, CallableWithArgs callable ->
             provider.withJdbi(dataSourceName, callable)
         }
+        mc.withJdbiHandle = {Closure closure ->
+            provider.withJdbiHandle(DEFAULT, closure)
+        }
+        mc.withJdbiHandle << {String dataSourceName, Closure closure ->
+            provider.withJdbiHandle(dataSourceName, closure)
+        }
+        mc.withJdbiHandle << {CallableWithArgs callable ->
+            provider.withJdbiHandle(DEFAULT, callable)
+        }
+        mc.withJdbiHandle << {String dataSourceName, CallableWithArgs callable ->
+            provider.withJdbiHandle(dataSourceName, callable)
+        }
+        mc.withJdbiTransaction = {Closure closure ->
+            provider.withJdbiTransaction(DEFAULT, closure)
+        }
+        mc.withJdbiTransaction << {String dataSourceName, Closure closure ->
+            provider.withJdbiTransaction(dataSourceName, closure)
+        }
+        mc.withJdbiTransaction << {String dataSourceName, TransactionIsolationLevel isolation, Closure closure ->
+            provider.withJdbiTransaction(dataSourceName, isolation, closure)
+        }
+        mc.withJdbiTransaction << {CallableWithArgs callable ->
+            provider.withJdbiTransaction(DEFAULT, callable)
+        }
+        mc.withJdbiTransaction << {String dataSourceName, CallableWithArgs callable ->
+            provider.withJdbiTransaction(dataSourceName, callable)
+        }
+        mc.withJdbiTransaction << {String dataSourceName, TransactionIsolationLevel isolation, CallableWithArgs callable ->
+            provider.withJdbiTransaction(dataSourceName, isolation, callable)
+        }
+        mc.withJdbiAsync = {Closure closure ->
+            provider.withJdbiAsync(DEFAULT, closure)
+        }
+        mc.withJdbiAsync << {String dataSourceName, Closure closure ->
+            provider.withJdbiAsync(dataSourceName, closure)
+        }
+        mc.withJdbiAsync << {CallableWithArgs callable ->
+            provider.withJdbiAsync(DEFAULT, callable)
+        }
+        mc.withJdbiAsync << {String dataSourceName, CallableWithArgs callable ->
+            provider.withJdbiAsync(dataSourceName, callable)
+        }
+        mc.withJdbiBatch = {String sql, Iterable rows, int chunkSize ->
+            provider.withJdbiBatch(DEFAULT, sql, rows, chunkSize)
+        }
+        mc.withJdbiBatch << {String sql, Iterable rows, int chunkSize, Closure progress ->
+            provider.withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress)
+        }
+        mc.withJdbiBatch << {String sql, Iterable rows, int chunkSize, CallableWithArgs progress ->
+            provider.withJdbiBatch(DEFAULT, sql, rows, chunkSize, progress)
+        }
+        mc.withJdbiBatch << {String dataSourceName, String sql, Iterable rows, int chunkSize ->
+            provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize)
+        }
+        mc.withJdbiBatch << {String dataSourceName, String sql, Iterable rows, int chunkSize, Closure progress ->
+            provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize, progress)
+        }
+        mc.withJdbiBatch << {String dataSourceName, String sql, Iterable rows, int chunkSize, CallableWithArgs progress ->
+            provider.withJdbiBatch(dataSourceName, sql, rows, chunkSize, progress)
+        }
+        mc.withJdbiStream = {String sql, Map params, Closure closure ->
+            provider.withJdbiStream(DEFAULT, sql, params, closure)
+        }
+        mc.withJdbiStream << {String dataSourceName, String sql, Map params, Closure closure ->
+            provider.withJdbiStream(dataSourceName, sql, params, closure)
+        }
+        mc.withJdbiStream << {String sql, Map params, CallableWithArgs callable ->
+            provider.withJdbiStream(DEFAULT, sql, params, callable)
+        }
+        mc.withJdbiStream << {String dataSourceName, String sql, Map params, CallableWithArgs callable ->
+            provider.withJdbiStream(dataSourceName, sql, params, callable)
+        }
+        mc.openJdbiStream = {String sql, Map params ->
+            provider.openJdbiStream(DEFAULT, sql, params)
+        }
+        mc.openJdbiStream << {String dataSourceName, String sql, Map params ->
+            provider.openJdbiStream(dataSourceName, sql, params)
+        }
+        mc.fetchJdbiColumns = {String sql, Map params, Map columns ->
+            provider.fetchJdbiColumns(DEFAULT, sql, params, columns, false)
+        }
+        mc.fetchJdbiColumns << {String sql, Map params, Map columns, boolean offHeap ->
+            provider.fetchJdbiColumns(DEFAULT, sql, params, columns, offHeap)
+        }
+        mc.fetchJdbiColumns << {String dataSourceName, String sql, Map params, Map columns ->
+            provider.fetchJdbiColumns(dataSourceName, sql, params, columns, false)
+        }
+        mc.fetchJdbiColumns << {String dataSourceName, String sql, Map params, Map columns, boolean offHeap ->
+            provider.fetchJdbiColumns(dataSourceName, sql, params, columns, offHeap)
+        }
+        mc.withJdbiReadOnly = {Closure closure ->
+            provider.withJdbiReadOnly(DEFAULT, closure)
+        }
+        mc.withJdbiReadOnly << {String groupName, Closure closure ->
+            provider.withJdbiReadOnly(groupName, closure)
+        }
+        mc.withJdbiReadOnly << {CallableWithArgs callable ->
+            provider.withJdbiReadOnly(DEFAULT, callable)
+        }
+        mc.withJdbiReadOnly << {String groupName, CallableWithArgs callable ->
+            provider.withJdbiReadOnly(groupName, callable)
+        }
+        mc.withJdbiAll = {Map bodies ->
+            provider.withJdbiAll(bodies)
+        }
+        mc.withJdbiAll << {Map bodies, long timeoutMillis ->
+            provider.withJdbiAll(bodies, timeoutMillis)
+        }
+        mc.withJdbiEach = {List dataSourceNames, Closure closure ->
+            provider.withJdbiEach(dataSourceNames, closure)
+        }
+        mc.withJdbiEach << {List dataSourceNames, Closure closure, long timeoutMillis ->
+            provider.withJdbiEach(dataSourceNames, closure, timeoutMillis)
+        }
+        mc.withJdbiEach << {List dataSourceNames, CallableWithArgs callable ->
+            provider.withJdbiEach(dataSourceNames, callable)
+        }
+        mc.withJdbiEach << {List dataSourceNames, CallableWithArgs callable, long timeoutMillis ->
+            provider.withJdbiEach(dataSourceNames, callable, timeoutMillis)
+        }
+        mc.withJdbiDao = {Class daoClass, Closure closure ->
+            provider.withJdbiDao(daoClass, closure)
+        }
+        mc.withJdbiDao << {String dataSourceName, Class daoClass, Closure closure ->
+            provider.withJdbiDao(dataSourceName, daoClass, closure)
+        }
+        mc.withJdbiDao << {Class daoClass, CallableWithArgs callable ->
+            provider.withJdbiDao(daoClass, callable)
+        }
+        mc.withJdbiDao << {String dataSourceName, Class daoClass, CallableWithArgs callable ->
+            provider.withJdbiDao(dataSourceName, daoClass, callable)
+        }
+        mc.getJdbiDao = {Class daoClass ->
+            provider.getJdbiDao(daoClass)
+        }
+        mc.getJdbiDao << {String dataSourceName, Class daoClass ->
+            provider.getJdbiDao(dataSourceName, daoClass)
+        }
+        mc.getJdbiWriteBehind = {->
+            provider.getJdbiWriteBehind(DEFAULT)
+        }
+        mc.getJdbiWriteBehind << {String dataSourceName ->
+            provider.getJdbiWriteBehind(dataSourceName)
+        }
     }
 }
\ No newline at end of file
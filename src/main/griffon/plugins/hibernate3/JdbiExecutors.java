@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.ApplicationHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+
+/**
+ * Keeps a bounded executor per datasource for {@code withJdbiAsync} calls.
+ * Executors are configured in the {@code jdbi.async} block of each datasource
+ * in {@code DataSource.groovy}.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiExecutors {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiExecutors.class);
+    private static final JdbiExecutors INSTANCE;
+
+    private final ConcurrentMap<String, DataSourceExecutor> executors = new ConcurrentHashMap<String, DataSourceExecutor>();
+
+    static {
+        INSTANCE = new JdbiExecutors();
+    }
+
+    public static JdbiExecutors getInstance() {
+        return INSTANCE;
+    }
+
+    private JdbiExecutors() {}
+
+    public <R> JdbiFuture<R> submit(String dataSourceName, Callable<R> task) {
+        DataSourceExecutor executor = resolveExecutor(dataSourceName);
+        JdbiFuture<R> future = new JdbiFuture<R>(task, executor.callbacksInsideUI);
+        try {
+            executor.pool.execute(future);
+        } catch (RejectedExecutionException e) {
+            if (!executor.callerRuns || executor.pool.isShutdown()) throw e;
+            future.run();
+        }
+        return future;
+    }
+
+    /**
+     * Submits a task that is one of several meant to run in parallel. Unlike
+     * {@link #submit(String, Callable)} it never runs the task on the calling
+     * thread, which would run the tasks one after the other: a saturated
+     * executor rejects it whatever {@code async.saturationPolicy} says.
+     */
+    public <R> JdbiFuture<R> fork(String dataSourceName, Callable<R> task) {
+        DataSourceExecutor executor = resolveExecutor(dataSourceName);
+        JdbiFuture<R> future = new JdbiFuture<R>(task, executor.callbacksInsideUI);
+        executor.pool.execute(future);
+        return future;
+    }
+
+    public ThreadPoolExecutor getExecutor(String dataSourceName) {
+        return resolveExecutor(dataSourceName).pool;
+    }
+
+    public void shutdown(String dataSourceName) {
+        DataSourceExecutor executor = executors.remove(dataSourceName);
+        if (executor != null) executor.pool.shutdown();
+    }
+
+    private DataSourceExecutor resolveExecutor(String dataSourceName) {
+        DataSourceExecutor executor = executors.get(dataSourceName);
+        if (executor == null) {
+            DataSourceExecutor created = createExecutor(dataSourceName);
+            executor = executors.putIfAbsent(dataSourceName, created);
+            if (executor == null) {
+                executor = created;
+            } else {
+                created.pool.shutdown();
+            }
+        }
+        return executor;
+    }
+
+    private DataSourceExecutor createExecutor(String dataSourceName) {
+        Map config = JdbiConnector.jdbiConfig(ApplicationHolder.getApplication(), dataSourceName);
+        int threads = Math.max(1, getConfigValueAsInt(config, "async.threads", 4));
+        int queueSize = Math.max(1, getConfigValueAsInt(config, "async.queueSize", 64));
+        boolean callbacksInsideUI = getConfigValueAsBoolean(config, "async.callbacksInsideUI", true);
+        String saturationPolicy = getConfigValueAsString(config, "async.saturationPolicy", "abort");
+
+        // running on the caller, usually the UI thread, defeats withJdbiAsync thus it must be asked for;
+        // submit decides, so that fork can refuse to
+        boolean callerRuns = "callerRuns".equals(saturationPolicy);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new JdbiThreadFactory("jdbi-async-" + dataSourceName), new SaturationPolicy(dataSourceName));
+        pool.allowCoreThreadTimeOut(true);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Created async executor for datasource '" + dataSourceName + "' with " + threads + " threads and a queue of " + queueSize);
+        }
+        return new DataSourceExecutor(pool, callbacksInsideUI, callerRuns);
+    }
+
+    private static class SaturationPolicy implements RejectedExecutionHandler {
+        private final String dataSourceName;
+
+        private SaturationPolicy(String dataSourceName) {
+            this.dataSourceName = dataSourceName;
+        }
+
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Async executor of datasource '" + dataSourceName + "' is shut down");
+            }
+            throw new RejectedExecutionException("Async executor of datasource '" + dataSourceName + "' is saturated, all " +
+                pool.getMaximumPoolSize() + " threads are busy and " + pool.getQueue().size() + " task(s) are queued");
+        }
+    }
+
+    private static class DataSourceExecutor {
+        private final ThreadPoolExecutor pool;
+        private final boolean callbacksInsideUI;
+        private final boolean callerRuns;
+
+        private DataSourceExecutor(ThreadPoolExecutor pool, boolean callbacksInsideUI, boolean callerRuns) {
+            this.pool = pool;
+            this.callbacksInsideUI = callbacksInsideUI;
+            this.callerRuns = callerRuns;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Outcome of a {@code withJdbiAll} or {@code withJdbiEach} call. Every
+ * datasource ends up either in {@code results} or in {@code failures}, both
+ * keyed by datasource name in the order the branches were given. Branches
+ * that did not finish in time fail with a {@code TimeoutException}.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiFanOutResult {
+    private final Map<String, Object> results;
+    private final Map<String, Throwable> failures;
+
+    public JdbiFanOutResult(Map<String, Object> results, Map<String, Throwable> failures) {
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(results));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<String, Throwable>(failures));
+    }
+
+    public Map<String, Object> getResults() {
+        return results;
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    public boolean isTimedOut(String dataSourceName) {
+        return failures.get(dataSourceName) instanceof TimeoutException;
+    }
+
+    /**
+     * Returns the result of the given datasource, rethrowing its failure if
+     * it had one.
+     */
+    public Object get(String dataSourceName) {
+        Throwable failure = failures.get(dataSourceName);
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) {
+            throw new IllegalStateException("Branch on datasource '" + dataSourceName + "' failed", failure);
+        }
+        if (!results.containsKey(dataSourceName)) {
+            throw new IllegalArgumentException("No branch ran on datasource '" + dataSourceName + "'");
+        }
+        return results.get(dataSourceName);
+    }
+
+    /**
+     * Same as {@link #get(String)}, enables {@code result['reports']} in Groovy.
+     */
+    public Object getAt(String dataSourceName) {
+        return get(dataSourceName);
+    }
+
+    public String toString() {
+        return "JdbiFanOutResult[results=" + results.keySet() + ", failures=" + failures + "]";
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.ApplicationHolder;
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Result of an asynchronous {@code withJdbiAsync} call. Callbacks registered
+ * with {@code whenComplete} receive the result and the failure (one of them
+ * being {@code null}) once the statements finish, are cancelled or fail.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiFuture<R> extends FutureTask<R> {
+    private final boolean callbacksInsideUI;
+    private final List<CallableWithArgs<?>> callbacks = new ArrayList<CallableWithArgs<?>>();
+
+    public JdbiFuture(Callable<R> callable, boolean callbacksInsideUI) {
+        super(callable);
+        this.callbacksInsideUI = callbacksInsideUI;
+    }
+
+    public JdbiFuture<R> whenComplete(Closure<?> callback) {
+        return callback != null ? whenComplete(AbstractJdbiProvider.asCallable(callback)) : this;
+    }
+
+    public JdbiFuture<R> whenComplete(CallableWithArgs<?> callback) {
+        if (callback == null) return this;
+        synchronized (callbacks) {
+            if (!isDone()) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        dispatch(callback);
+        return this;
+    }
+
+    @Override
+    protected void done() {
+        List<CallableWithArgs<?>> pending;
+        synchronized (callbacks) {
+            pending = new ArrayList<CallableWithArgs<?>>(callbacks);
+            callbacks.clear();
+        }
+        for (CallableWithArgs<?> callback : pending) {
+            dispatch(callback);
+        }
+    }
+
+    private void dispatch(final CallableWithArgs<?> callback) {
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            failure = e;
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        }
+
+        final Object[] args = new Object[]{result, failure};
+        if (callbacksInsideUI && ApplicationHolder.getApplication() != null) {
+            ApplicationHolder.getApplication().execInsideUIAsync(new Runnable() {
+                public void run() {
+                    callback.call(args);
+                }
+            });
+        } else {
+            callback.call(args);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically validates a connection of every probed datasource and tops up
+ * the pool to its minimum number of idle connections. The pool is the
+ * datasource itself, the object returned by its {@code getPool()} method, or
+ * the one held in one of its fields (the {@code ObjectPool} of commons-dbcp's
+ * {@code PoolingDataSource} and {@code BasicDataSource}), whichever counts
+ * idle connections with {@code getNumIdle()} or {@code getIdle()} and adds
+ * them with {@code addObject()}, as commons-pool does. Connections are thus
+ * created idle without being borrowed, within the {@code maxActive} of the
+ * pool. Datasources without such a pool are only validated.
+ * A failed probe triggers a {@code JdbiHealthCheckFailed} event.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiHealthProber {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiHealthProber.class);
+    private static final List<String> IDLE_GETTERS = Arrays.asList("getNumIdle", "getIdle");
+    private static final List<String> ACTIVE_GETTERS = Arrays.asList("getNumActive", "getActive");
+    private static final List<String> POOL_FIELDS = Arrays.asList("_pool", "connectionPool", "pool");
+    private static final JdbiHealthProber INSTANCE;
+
+    private final ConcurrentMap<String, ScheduledFuture<?>> probes = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+    private ScheduledExecutorService scheduler;
+
+    static {
+        INSTANCE = new JdbiHealthProber();
+    }
+
+    public static JdbiHealthProber getInstance() {
+        return INSTANCE;
+    }
+
+    private JdbiHealthProber() {}
+
+    public synchronized void start(GriffonApplication app, String dataSourceName, DataSource dataSource,
+                                   int intervalMillis, int minIdle, String validationQuery) {
+        stop(dataSourceName);
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new JdbiThreadFactory("jdbi-health"));
+        }
+        Probe probe = new Probe(app, dataSourceName, dataSource, minIdle, validationQuery);
+        probes.put(dataSourceName, scheduler.scheduleWithFixedDelay(probe, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public synchronized void stop(String dataSourceName) {
+        ScheduledFuture<?> probe = probes.remove(dataSourceName);
+        if (probe != null) probe.cancel(false);
+        if (probes.isEmpty() && scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isProbing(String dataSourceName) {
+        return probes.containsKey(dataSourceName);
+    }
+
+    /**
+     * Returns the object that keeps the idle connections of the given
+     * datasource and can add some, or {@code null} if there is none to be
+     * found.
+     */
+    static Object resolvePool(DataSource dataSource) {
+        if (isPool(dataSource)) return dataSource;
+        try {
+            Object pool = dataSource.getClass().getMethod("getPool").invoke(dataSource);
+            if (isPool(pool)) return pool;
+        } catch (Exception e) {
+            // try its fields
+        }
+        for (Class<?> type = dataSource.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (String name : POOL_FIELDS) {
+                try {
+                    Field field = type.getDeclaredField(name);
+                    field.setAccessible(true);
+                    Object pool = field.get(dataSource);
+                    if (isPool(pool)) return pool;
+                } catch (Exception e) {
+                    // try the next one
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPool(Object target) {
+        return target != null && findGetter(target, IDLE_GETTERS) != null && findMethod(target, "addObject") != null;
+    }
+
+    private static Method findGetter(Object target, List<String> names) {
+        for (String name : names) {
+            try {
+                Method method = target.getClass().getMethod(name);
+                if (method.getReturnType() == int.class) return method;
+            } catch (NoSuchMethodException e) {
+                // try the next one
+            }
+        }
+        return null;
+    }
+
+    private static Method findMethod(Object target, String name) {
+        try {
+            return target.getClass().getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static class Probe implements Runnable {
+        private final GriffonApplication app;
+        private final String dataSourceName;
+        private final DataSource dataSource;
+        private final int minIdle;
+        private final String validationQuery;
+        private final Object pool;
+        private final Method idleGetter;
+        private final Method activeGetter;
+        private final Method maxActiveGetter;
+        private final Method adder;
+
+        private Probe(GriffonApplication app, String dataSourceName, DataSource dataSource, int minIdle, String validationQuery) {
+            this.app = app;
+            this.dataSourceName = dataSourceName;
+            this.dataSource = dataSource;
+            this.minIdle = minIdle;
+            this.validationQuery = validationQuery;
+            this.pool = resolvePool(dataSource);
+            this.idleGetter = pool != null ? findGetter(pool, IDLE_GETTERS) : null;
+            this.activeGetter = pool != null ? findGetter(pool, ACTIVE_GETTERS) : null;
+            this.maxActiveGetter = pool != null ? findGetter(pool, Arrays.asList("getMaxActive")) : null;
+            this.adder = pool != null ? findMethod(pool, "addObject") : null;
+            if (minIdle > 0 && pool == null) {
+                LOG.info("The pool of datasource '" + dataSourceName + "' cannot be topped up, its connections are only validated");
+            }
+        }
+
+        public void run() {
+            try {
+                Connection connection = dataSource.getConnection();
+                try {
+                    JdbiWarmUp.validate(connection, validationQuery);
+                } finally {
+                    close(connection);
+                }
+                topUp();
+            } catch (Exception e) {
+                LOG.warn("Health check of datasource '" + dataSourceName + "' failed", e);
+                if (app != null) app.event("JdbiHealthCheckFailed", Arrays.<Object>asList(dataSourceName, e));
+            }
+        }
+
+        private void topUp() throws Exception {
+            if (minIdle <= 0 || pool == null) return;
+            int idle = (Integer) idleGetter.invoke(pool);
+            int missing = minIdle - idle;
+            // added connections count against maxActive, leave room for live traffic
+            if (activeGetter != null && maxActiveGetter != null) {
+                int maxActive = (Integer) maxActiveGetter.invoke(pool);
+                if (maxActive > 0) missing = Math.min(missing, maxActive - idle - (Integer) activeGetter.invoke(pool));
+            }
+            for (int i = 0; i < missing; i++) {
+                adder.invoke(pool);
+            }
+        }
+
+        private static void close(Connection connection) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOG.debug("Could not close health check connection", e);
+            }
+        }
+    }
+}
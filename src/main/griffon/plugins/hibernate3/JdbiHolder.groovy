@@ -19,9 +19,15 @@ package griffon.plugins.jdbi
 import org.skife.jdbi.v2.DBI
 import griffon.core.GriffonApplication
 import griffon.util.ApplicationHolder
+import groovy.transform.CompileStatic
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
 import static griffon.util.GriffonNameUtils.isBlank
 
 /**
@@ -30,8 +36,23 @@ import static griffon.util.GriffonNameUtils.isBlank
 class JdbiHolder {
     private static final String DEFAULT = 'default'
     private static final Logger LOG = LoggerFactory.getLogger(JdbiHolder)
-    private final Map<String, DBI> dbis = [:]
-    private static final Object[] LOCK = new Object[0]
+    private final ConcurrentMap<String, DBI> dbis = new ConcurrentHashMap<String, DBI>()
+    private final ConcurrentMap<String, JdbiDataSourceGroup> dataSourceGroups = new ConcurrentHashMap<String, JdbiDataSourceGroup>()
+    private final ConcurrentMap<String, JdbiBulkhead> bulkheads = new ConcurrentHashMap<String, JdbiBulkhead>()
+    private final ConcurrentMap<String, JdbiWriteBehind> writeBehinds = new ConcurrentHashMap<String, JdbiWriteBehind>()
+    private final ConcurrentMap<String, ConfigObject> dataSourceConfigs = new ConcurrentHashMap<String, ConfigObject>()
+    private final ConcurrentMap<String, AtomicInteger> leases = new ConcurrentHashMap<String, AtomicInteger>()
+    // keyed by DBI (identity) so that DAOs never outlive the DBI they were created on
+    private final ConcurrentMap<DBI, ConcurrentMap<Class, Object>> daos = new ConcurrentHashMap<DBI, ConcurrentMap<Class, Object>>()
+    private final Set<String> draining = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>())
+    // leases of the current thread by datasource, kept and reused once released
+    private final ThreadLocal<Map<String, Lease>> heldLeases = new ThreadLocal<Map<String, Lease>>() {
+        @Override
+        protected Map<String, Lease> initialValue() {
+            new HashMap<String, Lease>()
+        }
+    }
+    private volatile boolean shuttingDown
 
     private static final JdbiHolder INSTANCE
 
@@ -46,7 +67,7 @@ class JdbiHolder {
     private JdbiHolder() {}
 
     String[] getJdbiNames() {
-        List<String> dataSourceNames = new ArrayList().addAll(dbis.keySet())
+        List<String> dataSourceNames = new ArrayList<String>(dbis.keySet())
         dataSourceNames.toArray(new String[dataSourceNames.size()])
     }
 
@@ -67,13 +88,16 @@ class JdbiHolder {
 
     void disconnectJdbi(String dataSourceName) {
         if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        DBI dbi = retrieveJdbi(dataSourceName)
         storeJdbi(dataSourceName, null)
+        if (dbi != null) daos.remove(dbi)
     }
 
     DBI fetchJdbi(String dataSourceName) {
         if (isBlank(dataSourceName)) dataSourceName = DEFAULT
         DBI dbi = retrieveJdbi(dataSourceName)
         if (dbi == null) {
+            if (shuttingDown) throw new IllegalStateException("Cannot connect to datasource '$dataSourceName' while shutting down")
             GriffonApplication app = ApplicationHolder.application
             dbi = JdbiConnector.instance.connect(app, dataSourceName)
         }
@@ -84,15 +108,332 @@ class JdbiHolder {
         dbi
     }
 
-    private DBI retrieveJdbi(String dataSourceName) {
-        synchronized (LOCK) {
-            dbis[dataSourceName]
+    /**
+     * Returns the on-demand SQL Object DAO of the given class for the DBI of
+     * the given datasource, creating and caching it the first time.
+     */
+    public <T> T fetchJdbiDao(String dataSourceName, Class<T> daoClass) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        fetchJdbiDao(dataSourceName, fetchJdbi(dataSourceName), daoClass)
+    }
+
+    public <T> T fetchJdbiDao(String dataSourceName, DBI dbi, Class<T> daoClass) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        ConcurrentMap<Class, Object> cache = daos.get(dbi)
+        Object dao = cache?.get(daoClass)
+        if (dao != null) return (T) dao
+
+        dao = dbi.onDemand(daoClass)
+        if (cache == null) {
+            cache = new ConcurrentHashMap<Class, Object>()
+            ConcurrentMap<Class, Object> previous = daos.putIfAbsent(dbi, cache)
+            if (previous != null) cache = previous
+        }
+        Object previous = cache.putIfAbsent(daoClass, dao)
+        if (previous != null) dao = previous
+        // the DBI may have been disconnected or replaced in the meantime, don't keep its DAOs
+        if (!dbi.is(retrieveJdbi(dataSourceName))) daos.remove(dbi)
+        (T) dao
+    }
+
+    /**
+     * Creates the DAOs of the given classes for a DBI that is about to be
+     * published with {@code setJdbi} or {@code swapJdbi}.
+     */
+    void createJdbiDaos(DBI dbi, Collection<Class> daoClasses) {
+        if (!daoClasses) return
+        ConcurrentMap<Class, Object> cache = new ConcurrentHashMap<Class, Object>()
+        for (Class daoClass : daoClasses) {
+            cache.put(daoClass, dbi.onDemand(daoClass))
+        }
+        daos.put(dbi, cache)
+    }
+
+    /**
+     * Drops the DAOs created with {@code createJdbiDaos} for a DBI that was
+     * never published.
+     */
+    void discardJdbiDaos(DBI dbi) {
+        daos.remove(dbi)
+    }
+
+    void setDataSourceGroup(String groupName, JdbiDataSourceGroup group) {
+        if (isBlank(groupName)) groupName = DEFAULT
+        if (group == null) {
+            dataSourceGroups.remove(groupName)
+        } else {
+            dataSourceGroups.put(groupName, group)
+        }
+    }
+
+    /**
+     * Returns the datasource group with the given name, reading it from
+     * {@code DataSource.groovy} the first time. A name that is not configured
+     * as a group yields a group made of that datasource alone.
+     */
+    JdbiDataSourceGroup fetchDataSourceGroup(String groupName) {
+        if (isBlank(groupName)) groupName = DEFAULT
+        JdbiDataSourceGroup group = dataSourceGroups.get(groupName)
+        if (group == null) {
+            group = JdbiConnector.createDataSourceGroup(ApplicationHolder.application, groupName)
+            JdbiDataSourceGroup previous = dataSourceGroups.putIfAbsent(groupName, group)
+            if (previous != null) group = previous
+        }
+        group
+    }
+
+    void setBulkhead(String dataSourceName, JdbiBulkhead bulkhead) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        if (bulkhead == null) {
+            bulkheads.remove(dataSourceName)
+        } else {
+            bulkheads.put(dataSourceName, bulkhead)
         }
     }
 
+    /**
+     * Returns the bulkhead guarding the given datasource, or {@code null} if
+     * it has none.
+     */
+    JdbiBulkhead getBulkhead(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        bulkheads.get(dataSourceName)
+    }
+
+    void setWriteBehind(String dataSourceName, JdbiWriteBehind writeBehind) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        if (writeBehind == null) {
+            writeBehinds.remove(dataSourceName)
+        } else {
+            writeBehinds.put(dataSourceName, writeBehind)
+        }
+    }
+
+    /**
+     * Returns the write-behind queue of the given datasource, or {@code null}
+     * if it has none.
+     */
+    JdbiWriteBehind getWriteBehind(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        writeBehinds.get(dataSourceName)
+    }
+
+    void setDataSourceConfig(String dataSourceName, ConfigObject config) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        if (config == null) {
+            dataSourceConfigs.remove(dataSourceName)
+        } else {
+            dataSourceConfigs.put(dataSourceName, config)
+        }
+    }
+
+    /**
+     * Returns the settings the given datasource was connected with, or
+     * {@code null} if it is not connected.
+     */
+    ConfigObject getDataSourceConfig(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        dataSourceConfigs.get(dataSourceName)
+    }
+
+    Map<String, JdbiWriteBehind.Snapshot> getWriteBehindSnapshots() {
+        Map<String, JdbiWriteBehind.Snapshot> snapshots = new TreeMap<String, JdbiWriteBehind.Snapshot>()
+        writeBehinds.each { String dataSourceName, JdbiWriteBehind writeBehind -> snapshots[dataSourceName] = writeBehind.snapshot }
+        Collections.unmodifiableMap(snapshots)
+    }
+
+    boolean isShuttingDown() {
+        shuttingDown
+    }
+
+    /**
+     * Refuses new calls on every datasource, and new connections, from now on.
+     */
+    void setShuttingDown(boolean shuttingDown) {
+        this.shuttingDown = shuttingDown
+    }
+
+    /**
+     * Registers a call in flight on the given datasource. Fails if the
+     * datasource is being disconnected or the application is shutting down,
+     * unless the current thread already holds a lease on it: calls nested in
+     * one that was let in are let in too.
+     */
+    @CompileStatic
+    void leaseJdbi(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        Lease lease = heldLease(dataSourceName)
+        if (lease.depth > 0) {
+            lease.depth++
+            return
+        }
+
+        checkOpen(dataSourceName)
+        AtomicInteger counter = leaseCounter(dataSourceName)
+        counter.incrementAndGet()
+        // a drain may have started in between
+        if (shuttingDown || draining.contains(dataSourceName)) {
+            release(counter)
+            checkOpen(dataSourceName)
+        }
+        lease.counter = counter
+        lease.depth = 1
+    }
+
+    @CompileStatic
+    void releaseJdbi(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        Lease lease = heldLeases.get().get(dataSourceName)
+        if (lease == null || lease.depth == 0 || --lease.depth > 0) return
+        // the counter the lease was taken on, which is not the current one if the DBI was swapped since
+        AtomicInteger counter = lease.counter
+        lease.counter = null
+        if (counter != null) release(counter)
+    }
+
+    /**
+     * Registers a call in flight that outlives the current one, such as an
+     * open stream. The lease is not bound to the current thread: it ends when
+     * the returned action runs, which may happen on any thread, once.
+     */
+    @CompileStatic
+    Runnable leaseDetachedJdbi(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        // like nested calls, work started by a call that was let in is let in too
+        boolean nested = isLeaseHeld(dataSourceName)
+        if (!nested) checkOpen(dataSourceName)
+        final AtomicInteger counter = leaseCounter(dataSourceName)
+        counter.incrementAndGet()
+        if (!nested && (shuttingDown || draining.contains(dataSourceName))) {
+            release(counter)
+            checkOpen(dataSourceName)
+        }
+        final AtomicBoolean released = new AtomicBoolean()
+        return new Runnable() {
+            void run() {
+                if (released.compareAndSet(false, true)) release(counter)
+            }
+        }
+    }
+
+    int getLeases(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        AtomicInteger counter = leases.get(dataSourceName)
+        counter != null ? counter.get() : 0
+    }
+
+    /**
+     * Refuses new calls on the given datasource and waits up to the given
+     * number of milliseconds for the calls in flight to finish. Returns the
+     * number of calls still in flight when the wait ended.
+     */
+    int drainJdbi(String dataSourceName, long timeoutMillis) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        draining.add(dataSourceName)
+        // the draining thread may still use the datasource, e.g. for BootstrapJdbi.destroy
+        heldLease(dataSourceName).depth++
+        awaitLeases(leaseCounter(dataSourceName), timeoutMillis)
+    }
+
+    /**
+     * Accepts calls on a datasource drained with {@code drainJdbi} again. Must
+     * be called from the thread that drained it.
+     */
+    void undrainJdbi(String dataSourceName) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        releaseJdbi(dataSourceName)
+        draining.remove(dataSourceName)
+    }
+
+    /**
+     * Replaces the DBI of a connected datasource in one step: calls starting
+     * after the swap get the new one. Then waits up to the given number of
+     * milliseconds for the calls that started before the swap to finish, and
+     * returns how many of them were still running when the wait ended.
+     */
+    int swapJdbi(String dataSourceName, DBI dbi, long timeoutMillis) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT
+        // the DBI goes first: a call counted on the new counter is sure to see the new DBI
+        DBI previousJdbi = retrieveJdbi(dataSourceName)
+        storeJdbi(dataSourceName, dbi)
+        AtomicInteger previous = leases.put(dataSourceName, new AtomicInteger())
+        int pending = previous != null ? awaitLeases(previous, timeoutMillis) : 0
+        if (previousJdbi != null) daos.remove(previousJdbi)
+        pending
+    }
+
+    @CompileStatic
+    private Lease heldLease(String dataSourceName) {
+        Map<String, Lease> held = heldLeases.get()
+        Lease lease = held.get(dataSourceName)
+        if (lease == null) {
+            lease = new Lease()
+            held.put(dataSourceName, lease)
+        }
+        lease
+    }
+
+    @CompileStatic
+    private boolean isLeaseHeld(String dataSourceName) {
+        Lease lease = heldLeases.get().get(dataSourceName)
+        lease != null && lease.depth > 0
+    }
+
+    private static int awaitLeases(AtomicInteger counter, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + Math.max(timeoutMillis, 0L)
+        synchronized (counter) {
+            long remaining = deadline - System.currentTimeMillis()
+            while (counter.get() > 0 && remaining > 0L) {
+                counter.wait(remaining)
+                remaining = deadline - System.currentTimeMillis()
+            }
+        }
+        counter.get()
+    }
+
+    @CompileStatic
+    private static void release(AtomicInteger counter) {
+        if (counter.decrementAndGet() == 0) {
+            synchronized (counter) {
+                counter.notifyAll()
+            }
+        }
+    }
+
+    @CompileStatic
+    private void checkOpen(String dataSourceName) {
+        if (shuttingDown) throw new IllegalStateException("Refusing call on datasource '$dataSourceName', the application is shutting down")
+        if (draining.contains(dataSourceName)) throw new IllegalStateException("Refusing call on datasource '$dataSourceName', it is being disconnected")
+    }
+
+    @CompileStatic
+    private AtomicInteger leaseCounter(String dataSourceName) {
+        AtomicInteger counter = leases.get(dataSourceName)
+        if (counter == null) {
+            counter = new AtomicInteger()
+            AtomicInteger previous = leases.putIfAbsent(dataSourceName, counter)
+            if (previous != null) counter = previous
+        }
+        counter
+    }
+
+    private DBI retrieveJdbi(String dataSourceName) {
+        dbis.get(dataSourceName)
+    }
+
     private void storeJdbi(String dataSourceName, DBI dbi) {
-        synchronized (LOCK) {
-            dbis[dataSourceName] = dbi
+        if (dbi == null) {
+            dbis.remove(dataSourceName)
+        } else {
+            dbis.put(dataSourceName, dbi)
         }
     }
+
+    @CompileStatic
+    private static class Lease {
+        // null while the draining thread holds it
+        AtomicInteger counter
+        // 0 once released
+        int depth
+    }
 }
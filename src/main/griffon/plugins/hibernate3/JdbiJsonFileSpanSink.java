@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends spans as JSON lines to a file. Writes happen on a background
+ * thread; spans are dropped (and counted) if the writer falls behind by more
+ * than {@code queueSize} spans, so callers never block on disk I/O.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiJsonFileSpanSink implements JdbiSpanSink {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiJsonFileSpanSink.class);
+    private static final int BATCH_SIZE = 256;
+
+    private final File file;
+    private final BlockingQueue<JdbiSpan> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public JdbiJsonFileSpanSink(File file, int queueSize) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<JdbiSpan>(queueSize);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        writer = new JdbiThreadFactory("jdbi-trace-writer").newThread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        });
+        writer.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Number of spans discarded because the writer could not keep up.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void export(JdbiSpan span) {
+        if (closed || !queue.offer(span)) dropped.incrementAndGet();
+    }
+
+    /**
+     * Stops accepting spans and waits briefly for pending ones to be written.
+     */
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+            List<JdbiSpan> batch = new ArrayList<JdbiSpan>(BATCH_SIZE);
+            while (!closed || !queue.isEmpty()) {
+                JdbiSpan span;
+                try {
+                    span = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // close() was called, flush whatever is left
+                    span = queue.poll();
+                }
+                if (span == null) continue;
+                batch.add(span);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (JdbiSpan s : batch) {
+                    out.write(s.toJson());
+                    out.write('\n');
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write spans to " + file + ", tracing output is disabled", e);
+            closed = true;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import groovy.lang.ExpandoMetaClass;
+import groovy.lang.MetaMethod;
+import org.codehaus.groovy.reflection.CachedClass;
+import org.codehaus.groovy.reflection.ReflectionCache;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Meta methods that call a {@code JdbiProvider} directly, one per method of
+ * the provider contract. Unlike the closures registered by
+ * {@code JdbiEnhancer.enhance} there is no closure to invoke, thus once
+ * a call site has cached the method each call costs a switch and a cast.
+ *
+ * @author Andres Almiray
+ */
+final class JdbiMetaMethods {
+    private static final Signature[] SIGNATURES = new Signature[]{
+        new Signature("withJdbi", new Class[]{Closure.class}),
+        new Signature("withJdbi", new Class[]{String.class, Closure.class}),
+        new Signature("withJdbi", new Class[]{CallableWithArgs.class}),
+        new Signature("withJdbi", new Class[]{String.class, CallableWithArgs.class}),
+        new Signature("withJdbiHandle", new Class[]{Closure.class}),
+        new Signature("withJdbiHandle", new Class[]{String.class, Closure.class}),
+        new Signature("withJdbiHandle", new Class[]{CallableWithArgs.class}),
+        new Signature("withJdbiHandle", new Class[]{String.class, CallableWithArgs.class}),
+        new Signature("withJdbiTransaction", new Class[]{Closure.class}),
+        new Signature("withJdbiTransaction", new Class[]{String.class, Closure.class}),
+        new Signature("withJdbiTransaction", new Class[]{String.class, TransactionIsolationLevel.class, Closure.class}),
+        new Signature("withJdbiTransaction", new Class[]{CallableWithArgs.class}),
+        new Signature("withJdbiTransaction", new Class[]{String.class, CallableWithArgs.class}),
+        new Signature("withJdbiTransaction", new Class[]{String.class, TransactionIsolationLevel.class, CallableWithArgs.class}),
+        new Signature("withJdbiAsync", new Class[]{Closure.class}),
+        new Signature("withJdbiAsync", new Class[]{String.class, Closure.class}),
+        new Signature("withJdbiAsync", new Class[]{CallableWithArgs.class}),
+        new Signature("withJdbiAsync", new Class[]{String.class, CallableWithArgs.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, Iterable.class, int.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, Iterable.class, int.class, Closure.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, Iterable.class, int.class, CallableWithArgs.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, String.class, Iterable.class, int.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, String.class, Iterable.class, int.class, Closure.class}),
+        new Signature("withJdbiBatch", new Class[]{String.class, String.class, Iterable.class, int.class, CallableWithArgs.class}),
+        new Signature("withJdbiStream", new Class[]{String.class, Map.class, Closure.class}),
+        new Signature("withJdbiStream", new Class[]{String.class, String.class, Map.class, Closure.class}),
+        new Signature("withJdbiStream", new Class[]{String.class, Map.class, CallableWithArgs.class}),
+        new Signature("withJdbiStream", new Class[]{String.class, String.class, Map.class, CallableWithArgs.class}),
+        new Signature("openJdbiStream", new Class[]{String.class, Map.class}),
+        new Signature("openJdbiStream", new Class[]{String.class, String.class, Map.class}),
+        new Signature("fetchJdbiColumns", new Class[]{String.class, Map.class, Map.class}),
+        new Signature("fetchJdbiColumns", new Class[]{String.class, Map.class, Map.class, boolean.class}),
+        new Signature("fetchJdbiColumns", new Class[]{String.class, String.class, Map.class, Map.class}),
+        new Signature("fetchJdbiColumns", new Class[]{String.class, String.class, Map.class, Map.class, boolean.class}),
+        new Signature("withJdbiReadOnly", new Class[]{Closure.class}),
+        new Signature("withJdbiReadOnly", new Class[]{String.class, Closure.class}),
+        new Signature("withJdbiReadOnly", new Class[]{CallableWithArgs.class}),
+        new Signature("withJdbiReadOnly", new Class[]{String.class, CallableWithArgs.class}),
+        new Signature("withJdbiAll", new Class[]{Map.class}),
+        new Signature("withJdbiAll", new Class[]{Map.class, long.class}),
+        new Signature("withJdbiEach", new Class[]{List.class, Closure.class}),
+        new Signature("withJdbiEach", new Class[]{List.class, Closure.class, long.class}),
+        new Signature("withJdbiEach", new Class[]{List.class, CallableWithArgs.class}),
+        new Signature("withJdbiEach", new Class[]{List.class, CallableWithArgs.class, long.class}),
+        new Signature("withJdbiDao", new Class[]{Class.class, Closure.class}),
+        new Signature("withJdbiDao", new Class[]{String.class, Class.class, Closure.class}),
+        new Signature("withJdbiDao", new Class[]{Class.class, CallableWithArgs.class}),
+        new Signature("withJdbiDao", new Class[]{String.class, Class.class, CallableWithArgs.class}),
+        new Signature("getJdbiDao", new Class[]{Class.class}),
+        new Signature("getJdbiDao", new Class[]{String.class, Class.class}),
+        new Signature("getJdbiWriteBehind", new Class[]{}),
+        new Signature("getJdbiWriteBehind", new Class[]{String.class})
+    };
+
+    private JdbiMetaMethods() {}
+
+    static void register(ExpandoMetaClass mc, JdbiProvider provider) {
+        CachedClass declaringClass = ReflectionCache.getCachedClass(mc.getTheClass());
+        for (int i = 0; i < SIGNATURES.length; i++) {
+            mc.registerInstanceMethod(new ProviderMetaMethod(declaringClass, provider, i));
+        }
+    }
+
+    private static class Signature {
+        private final String name;
+        private final Class[] parameterTypes;
+
+        private Signature(String name, Class[] parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+
+    private static class ProviderMetaMethod extends MetaMethod {
+        private final CachedClass declaringClass;
+        private final JdbiProvider provider;
+        private final int index;
+
+        private ProviderMetaMethod(CachedClass declaringClass, JdbiProvider provider, int index) {
+            super(SIGNATURES[index].parameterTypes);
+            this.declaringClass = declaringClass;
+            this.provider = provider;
+            this.index = index;
+        }
+
+        public int getModifiers() {
+            return Modifier.PUBLIC;
+        }
+
+        public String getName() {
+            return SIGNATURES[index].name;
+        }
+
+        public Class getReturnType() {
+            return Object.class;
+        }
+
+        public CachedClass getDeclaringClass() {
+            return declaringClass;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object object, Object[] args) {
+            switch (index) {
+            case 0:
+                return provider.withJdbi((Closure) args[0]);
+            case 1:
+                return provider.withJdbi((String) args[0], (Closure) args[1]);
+            case 2:
+                return provider.withJdbi((CallableWithArgs) args[0]);
+            case 3:
+                return provider.withJdbi((String) args[0], (CallableWithArgs) args[1]);
+            case 4:
+                return provider.withJdbiHandle((Closure) args[0]);
+            case 5:
+                return provider.withJdbiHandle((String) args[0], (Closure) args[1]);
+            case 6:
+                return provider.withJdbiHandle((CallableWithArgs) args[0]);
+            case 7:
+                return provider.withJdbiHandle((String) args[0], (CallableWithArgs) args[1]);
+            case 8:
+                return provider.withJdbiTransaction((Closure) args[0]);
+            case 9:
+                return provider.withJdbiTransaction((String) args[0], (Closure) args[1]);
+            case 10:
+                return provider.withJdbiTransaction((String) args[0], (TransactionIsolationLevel) args[1], (Closure) args[2]);
+            case 11:
+                return provider.withJdbiTransaction((CallableWithArgs) args[0]);
+            case 12:
+                return provider.withJdbiTransaction((String) args[0], (CallableWithArgs) args[1]);
+            case 13:
+                return provider.withJdbiTransaction((String) args[0], (TransactionIsolationLevel) args[1], (CallableWithArgs) args[2]);
+            case 14:
+                return provider.withJdbiAsync((Closure) args[0]);
+            case 15:
+                return provider.withJdbiAsync((String) args[0], (Closure) args[1]);
+            case 16:
+                return provider.withJdbiAsync((CallableWithArgs) args[0]);
+            case 17:
+                return provider.withJdbiAsync((String) args[0], (CallableWithArgs) args[1]);
+            case 18:
+                return provider.withJdbiBatch((String) args[0], (Iterable) args[1], (Integer) args[2]);
+            case 19:
+                return provider.withJdbiBatch((String) args[0], (Iterable) args[1], (Integer) args[2], (Closure) args[3]);
+            case 20:
+                return provider.withJdbiBatch((String) args[0], (Iterable) args[1], (Integer) args[2], (CallableWithArgs) args[3]);
+            case 21:
+                return provider.withJdbiBatch((String) args[0], (String) args[1], (Iterable) args[2], (Integer) args[3]);
+            case 22:
+                return provider.withJdbiBatch((String) args[0], (String) args[1], (Iterable) args[2], (Integer) args[3], (Closure) args[4]);
+            case 23:
+                return provider.withJdbiBatch((String) args[0], (String) args[1], (Iterable) args[2], (Integer) args[3], (CallableWithArgs) args[4]);
+            case 24:
+                return provider.withJdbiStream((String) args[0], (Map) args[1], (Closure) args[2]);
+            case 25:
+                return provider.withJdbiStream((String) args[0], (String) args[1], (Map) args[2], (Closure) args[3]);
+            case 26:
+                return provider.withJdbiStream((String) args[0], (Map) args[1], (CallableWithArgs) args[2]);
+            case 27:
+                return provider.withJdbiStream((String) args[0], (String) args[1], (Map) args[2], (CallableWithArgs) args[3]);
+            case 28:
+                return provider.openJdbiStream((String) args[0], (Map) args[1]);
+            case 29:
+                return provider.openJdbiStream((String) args[0], (String) args[1], (Map) args[2]);
+            case 30:
+                return provider.fetchJdbiColumns((String) args[0], (Map) args[1], (Map) args[2]);
+            case 31:
+                return provider.fetchJdbiColumns((String) args[0], (Map) args[1], (Map) args[2], (Boolean) args[3]);
+            case 32:
+                return provider.fetchJdbiColumns((String) args[0], (String) args[1], (Map) args[2], (Map) args[3]);
+            case 33:
+                return provider.fetchJdbiColumns((String) args[0], (String) args[1], (Map) args[2], (Map) args[3], (Boolean) args[4]);
+            case 34:
+                return provider.withJdbiReadOnly((Closure) args[0]);
+            case 35:
+                return provider.withJdbiReadOnly((String) args[0], (Closure) args[1]);
+            case 36:
+                return provider.withJdbiReadOnly((CallableWithArgs) args[0]);
+            case 37:
+                return provider.withJdbiReadOnly((String) args[0], (CallableWithArgs) args[1]);
+            case 38:
+                return provider.withJdbiAll((Map) args[0]);
+            case 39:
+                return provider.withJdbiAll((Map) args[0], (Long) args[1]);
+            case 40:
+                return provider.withJdbiEach((List) args[0], (Closure) args[1]);
+            case 41:
+                return provider.withJdbiEach((List) args[0], (Closure) args[1], (Long) args[2]);
+            case 42:
+                return provider.withJdbiEach((List) args[0], (CallableWithArgs) args[1]);
+            case 43:
+                return provider.withJdbiEach((List) args[0], (CallableWithArgs) args[1], (Long) args[2]);
+            case 44:
+                return provider.withJdbiDao((Class) args[0], (Closure) args[1]);
+            case 45:
+                return provider.withJdbiDao((String) args[0], (Class) args[1], (Closure) args[2]);
+            case 46:
+                return provider.withJdbiDao((Class) args[0], (CallableWithArgs) args[1]);
+            case 47:
+                return provider.withJdbiDao((String) args[0], (Class) args[1], (CallableWithArgs) args[2]);
+            case 48:
+                return provider.getJdbiDao((Class) args[0]);
+            case 49:
+                return provider.getJdbiDao((String) args[0], (Class) args[1]);
+            case 50:
+                return provider.getJdbiWriteBehind();
+            case 51:
+                return provider.getJdbiWriteBehind((String) args[0]);
+            default:
+                throw new IllegalStateException("Unknown method index " + index);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+
+/**
+ * Per datasource call counts, error counts, in-flight gauges and latency
+ * histograms of {@code withJdbi} bodies. Disabled by default, in which case
+ * the only cost paid per call is a volatile read. Enable it in
+ * {@code Config.groovy} with {@code griffon.jdbi.metrics.enabled = true}.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiMetrics {
+    private static final JdbiMetrics INSTANCE;
+
+    private final ConcurrentMap<String, DataSourceMetrics> metrics = new ConcurrentHashMap<String, DataSourceMetrics>();
+    private volatile boolean enabled;
+    private ScheduledExecutorService publisher;
+
+    static {
+        INSTANCE = new JdbiMetrics();
+    }
+
+    public static JdbiMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private JdbiMetrics() {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Reads {@code griffon.jdbi.metrics.enabled} and starts publishing a
+     * {@code JdbiMetrics} event every {@code griffon.jdbi.metrics.publishInterval}
+     * milliseconds when the interval is greater than zero.
+     */
+    public synchronized void configure(final GriffonApplication app) {
+        enabled = getConfigValueAsBoolean(app.getConfig(), "griffon.jdbi.metrics.enabled", false);
+        int interval = getConfigValueAsInt(app.getConfig(), "griffon.jdbi.metrics.publishInterval", 0);
+        stopPublishing();
+        if (enabled && interval > 0) {
+            publisher = Executors.newSingleThreadScheduledExecutor(new JdbiThreadFactory("jdbi-metrics"));
+            publisher.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    publish(app);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stopPublishing() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+    }
+
+    public void publish(GriffonApplication app) {
+        app.event("JdbiMetrics", Collections.<Object>singletonList(getSnapshots()));
+        Map<String, JdbiWriteBehind.Snapshot> writeBehinds = JdbiHolder.getInstance().getWriteBehindSnapshots();
+        if (!writeBehinds.isEmpty()) {
+            app.event("JdbiWriteBehindMetrics", Collections.<Object>singletonList(writeBehinds));
+        }
+    }
+
+    /**
+     * Marks the start of a call. Returns {@code 0} when metrics are disabled.
+     */
+    public long start(String dataSourceName) {
+        if (!enabled) return 0L;
+        metricsFor(dataSourceName).inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void stop(String dataSourceName, long start, boolean success) {
+        if (start == 0L) return;
+        DataSourceMetrics m = metricsFor(dataSourceName);
+        m.inFlight.decrementAndGet();
+        m.calls.incrementAndGet();
+        if (!success) m.errors.incrementAndGet();
+        m.latency.recordNanos(System.nanoTime() - start);
+    }
+
+    public Snapshot getSnapshot(String dataSourceName) {
+        DataSourceMetrics m = metrics.get(dataSourceName);
+        return m != null ? m.snapshot(dataSourceName) : null;
+    }
+
+    public Map<String, Snapshot> getSnapshots() {
+        Map<String, Snapshot> snapshots = new TreeMap<String, Snapshot>();
+        for (Map.Entry<String, DataSourceMetrics> entry : metrics.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    public void reset() {
+        metrics.clear();
+    }
+
+    private DataSourceMetrics metricsFor(String dataSourceName) {
+        DataSourceMetrics m = metrics.get(dataSourceName);
+        if (m == null) {
+            DataSourceMetrics created = new DataSourceMetrics();
+            m = metrics.putIfAbsent(dataSourceName, created);
+            if (m == null) m = created;
+        }
+        return m;
+    }
+
+    private static class DataSourceMetrics {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final JdbiLatencyHistogram latency = new JdbiLatencyHistogram();
+
+        private Snapshot snapshot(String dataSourceName) {
+            return new Snapshot(dataSourceName, calls.get(), errors.get(), inFlight.get(),
+                latency.getMean(), latency.getPercentile(50), latency.getPercentile(90),
+                latency.getPercentile(99), latency.getMax());
+        }
+    }
+
+    /**
+     * Immutable view of the metrics of a datasource. Latencies are in microseconds.
+     */
+    public static class Snapshot {
+        private final String dataSourceName;
+        private final long calls;
+        private final long errors;
+        private final int inFlight;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        public Snapshot(String dataSourceName, long calls, long errors, int inFlight, double mean, long p50, long p90, long p99, long max) {
+            this.dataSourceName = dataSourceName;
+            this.calls = calls;
+            this.errors = errors;
+            this.inFlight = inFlight;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("dataSourceName", dataSourceName);
+            map.put("calls", calls);
+            map.put("errors", errors);
+            map.put("inFlight", inFlight);
+            map.put("mean", mean);
+            map.put("p50", p50);
+            map.put("p90", p90);
+            map.put("p99", p99);
+            map.put("max", max);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return toMap().toString();
+        }
+    }
+}
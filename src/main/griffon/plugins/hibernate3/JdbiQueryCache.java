@@ -0,0 +1,322 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Results of queries on a single datasource, keyed by SQL and parameters.
+ * Entries expire after a fixed time to live and the least recently used ones
+ * are evicted once the cache is full. Each entry remembers the tables its
+ * query reads from so that writes to any of them invalidate it.<p>
+ * Lookups take no lock. Eviction is approximately LRU, as in
+ * {@link JdbiCachingStatementRewriter}. Every table has a generation of its
+ * own, bumped when the table is written, so that a load racing with a write
+ * is not cached while loads of other tables are.<p>
+ * Cached results are unmodifiable and safe to share between threads.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiQueryCache {
+    private static final Pattern READ_TABLES = Pattern.compile("\\b(?:from|join)\\s+([\\w.\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITTEN_TABLE = Pattern.compile(
+        "^\\s*(?:insert\\s+into|replace\\s+into|merge\\s+into|update|delete\\s+from|truncate\\s+(?:table\\s+)?)\\s*([\\w.\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+
+    private final String dataSourceName;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    // bumped when a table is written, so that loads racing with the write are not cached
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+    // bumped by invalidateAll
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public JdbiQueryCache(String dataSourceName, int maxEntries, long ttlMillis) {
+        this.dataSourceName = dataSourceName;
+        this.maxEntries = Math.max(maxEntries, 1);
+        this.ttlMillis = ttlMillis;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    /**
+     * Returns the cached rows of a query, or {@code null} if there are none.
+     */
+    public List<Map<String, Object>> get(String sql, Map<String, ?> params) {
+        Key key = new Key(sql, params);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            if (entries.remove(key, entry)) expirations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        hits.incrementAndGet();
+        return entry.rows;
+    }
+
+    /**
+     * Marks the start of a load of the given query; pass the returned value
+     * to {@link #put}.
+     */
+    public Load beginLoad(String sql) {
+        String[] tables = readTables(sql);
+        long[] stamps = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) stamps[i] = tableGeneration(tables[i]).get();
+        return new Load(tables, stamps, generation.get());
+    }
+
+    /**
+     * Caches the rows of a query unless any of the tables it reads from was
+     * invalidated since the load began. Returns the unmodifiable rows.
+     */
+    public List<Map<String, Object>> put(String sql, Map<String, ?> params, List<Map<String, Object>> rows, Load load) {
+        List<Map<String, Object>> immutableRows = immutable(rows);
+        if (!isCurrent(load)) return immutableRows;
+
+        Key key = new Key(sql, params);
+        Entry entry = new Entry(key, immutableRows, load.tables, System.currentTimeMillis() + ttlMillis);
+        entries.put(key, entry);
+        // an invalidation that ran between the check and the put may have missed the entry
+        if (!isCurrent(load)) {
+            entries.remove(key, entry);
+        } else if (entries.size() > maxEntries) {
+            evict();
+        }
+        return immutableRows;
+    }
+
+    /**
+     * Drops every entry whose query reads from any of the given tables.
+     */
+    public void invalidate(Collection<String> tables) {
+        Set<String> names = new HashSet<String>();
+        for (String table : tables) names.add(normalizeTable(table));
+        if (names.isEmpty()) return;
+        // generations go first: a load that checks them after this sees the write
+        for (String name : names) tableGeneration(name).incrementAndGet();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            for (String table : entry.tables) {
+                if (names.contains(table)) {
+                    it.remove();
+                    invalidations.incrementAndGet();
+                    break;
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+            invalidations.incrementAndGet();
+        }
+    }
+
+    private boolean isCurrent(Load load) {
+        if (generation.get() != load.generation) return false;
+        for (int i = 0; i < load.tables.length; i++) {
+            if (tableGeneration(load.tables[i]).get() != load.stamps[i]) return false;
+        }
+        return true;
+    }
+
+    private AtomicLong tableGeneration(String table) {
+        AtomicLong counter = generations.get(table);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = generations.putIfAbsent(table, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            Entry[] candidates = entries.values().toArray(new Entry[0]);
+            int excess = candidates.length - (maxEntries - maxEntries / 8);
+            if (excess <= 0) return;
+            long[] stamps = new long[candidates.length];
+            for (int i = 0; i < candidates.length; i++) stamps[i] = candidates[i].lastUsed;
+            Arrays.sort(stamps);
+            long threshold = stamps[excess - 1];
+            for (Entry entry : candidates) {
+                if (excess > 0 && entry.lastUsed <= threshold && entries.remove(entry.key, entry)) {
+                    evictions.incrementAndGet();
+                    excess--;
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0d : (double) h / total;
+    }
+
+    public String toString() {
+        return "JdbiQueryCache[dataSource=" + dataSourceName + ", size=" + getSize() + ", hits=" + getHits() +
+            ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", expirations=" + getExpirations() +
+            ", invalidations=" + getInvalidations() + "]";
+    }
+
+    /**
+     * Returns the table an {@code insert}, {@code update}, {@code delete},
+     * {@code merge} or {@code truncate} statement writes to, or {@code null}.
+     */
+    public static String writtenTable(String sql) {
+        Matcher matcher = WRITTEN_TABLE.matcher(sql);
+        return matcher.find() ? normalizeTable(matcher.group(1)) : null;
+    }
+
+    static String[] readTables(String sql) {
+        Set<String> tables = new HashSet<String>();
+        Matcher matcher = READ_TABLES.matcher(sql);
+        while (matcher.find()) tables.add(normalizeTable(matcher.group(1)));
+        return tables.toArray(new String[tables.size()]);
+    }
+
+    // schema qualifiers and identifier quotes are dropped: people, app.people and "PEOPLE" are the same table
+    static String normalizeTable(String table) {
+        String name = table.replaceAll("[\"`\\[\\]]", "");
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) name = name.substring(dot + 1);
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    static List<Map<String, Object>> immutable(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> copy = new ArrayList<Map<String, Object>>(rows.size());
+        // row maps are fresh instances owned by the cache from here on, wrapping them is enough
+        for (Map<String, Object> row : rows) copy.add(Collections.unmodifiableMap(row));
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * The generations of the tables read by a query when its load began.
+     */
+    public static final class Load {
+        private final String[] tables;
+        private final long[] stamps;
+        private final long generation;
+
+        private Load(String[] tables, long[] stamps, long generation) {
+            this.tables = tables;
+            this.stamps = stamps;
+            this.generation = generation;
+        }
+    }
+
+    private static class Entry {
+        private final Key key;
+        private final List<Map<String, Object>> rows;
+        private final String[] tables;
+        private final long expiresAt;
+        // nanoTime of the last lookup, racy updates are fine for eviction
+        private volatile long lastUsed = System.nanoTime();
+
+        private Entry(Key key, List<Map<String, Object>> rows, String[] tables, long expiresAt) {
+            this.key = key;
+            this.rows = rows;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Key {
+        private final String sql;
+        private final Map<String, ?> params;
+        private final int hash;
+
+        private Key(String sql, Map<String, ?> params) {
+            this.sql = sql;
+            this.params = params == null || params.isEmpty() ? Collections.<String, Object>emptyMap() : new HashMap<String, Object>(params);
+            this.hash = 31 * sql.hashCode() + this.params.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && sql.equals(other.sql) && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
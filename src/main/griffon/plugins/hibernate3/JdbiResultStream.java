@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily fetched query results. Rows are read from the driver as they are
+ * consumed, {@code fetchSize} at a time, and released once read, so memory use
+ * does not depend on the size of the result.<p>
+ * The stream owns a connection until it is closed. It closes itself once the
+ * last row is read or when reading fails; call {@link #close()} if iteration
+ * stops early. A stream that was not opened inside another call counts as a
+ * call in flight until then, for the bulkhead and for disconnects alike.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiResultStream<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiResultStream.class);
+
+    private final String dataSourceName;
+    private final Handle handle;
+    private final ResultIterator<T> rows;
+    private final Runnable release;
+    private final boolean ownsTransaction;
+    private final long start;
+    private long count;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * @param release ends the lease and gives back the permit of a stream that
+     *                owns its handle; {@code null} when the handle belongs to an
+     *                enclosing call
+     */
+    JdbiResultStream(String dataSourceName, Handle handle, ResultIterator<T> rows, Runnable release, boolean ownsTransaction) {
+        this.dataSourceName = dataSourceName;
+        this.handle = handle;
+        this.rows = rows;
+        this.release = release;
+        this.ownsTransaction = ownsTransaction;
+        this.start = release != null ? JdbiMetrics.getInstance().start(dataSourceName) : 0L;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    /**
+     * Number of rows read so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean hasNext() {
+        if (closed) return false;
+        try {
+            if (rows.hasNext()) return true;
+        } catch (RuntimeException e) {
+            failed = true;
+            close();
+            throw e;
+        }
+        close();
+        return false;
+    }
+
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            T row = rows.next();
+            count++;
+            return row;
+        } catch (RuntimeException e) {
+            failed = true;
+            close();
+            throw e;
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            rows.close();
+            if (ownsTransaction) {
+                if (failed) handle.rollback();
+                else handle.commit();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close result stream on datasource '" + dataSourceName + "'", e);
+        } finally {
+            if (release != null) {
+                try {
+                    handle.close();
+                    JdbiMetrics.getInstance().stop(dataSourceName, start, !failed);
+                } finally {
+                    release.run();
+                }
+            }
+        }
+    }
+}
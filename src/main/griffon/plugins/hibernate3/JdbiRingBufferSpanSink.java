@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the last {@code capacity} spans in memory, overwriting the oldest.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiRingBufferSpanSink implements JdbiSpanSink {
+    private final JdbiSpan[] spans;
+    private long exported;
+
+    public JdbiRingBufferSpanSink(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Span buffer capacity must be greater than zero, got " + capacity);
+        }
+        spans = new JdbiSpan[capacity];
+    }
+
+    public int getCapacity() {
+        return spans.length;
+    }
+
+    public synchronized void export(JdbiSpan span) {
+        spans[(int) (exported++ % spans.length)] = span;
+    }
+
+    /**
+     * Returns the spans currently held, oldest first.
+     */
+    public synchronized List<JdbiSpan> getSpans() {
+        int size = (int) Math.min(exported, spans.length);
+        List<JdbiSpan> list = new ArrayList<JdbiSpan>(size);
+        for (long i = exported - size; i < exported; i++) {
+            list.add(spans[(int) (i % spans.length)]);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Total number of spans exported, including those already overwritten.
+     */
+    public synchronized long getExported() {
+        return exported;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < spans.length; i++) spans[i] = null;
+        exported = 0;
+    }
+
+    public void close() {
+        // nothing to release
+    }
+}
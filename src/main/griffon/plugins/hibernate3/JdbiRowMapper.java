@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps rows to a {@code @JdbiRow} class using the code generated for it.
+ * Columns are matched to fields by name, ignoring case and underscores
+ * ({@code first_name} matches {@code firstName}); the match is computed once
+ * per result set and kept in the {@code StatementContext}. Fields without a
+ * matching column are left untouched.
+ * <p>
+ * The static {@code get*Object} methods are called by generated code to read
+ * nullable wrapper fields.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiRowMapper<T> implements ResultSetMapper<T> {
+    private final Class<T> type;
+    private final JdbiRowMapping prototype;
+    private final String[] fields;
+    private final String attribute;
+
+    public JdbiRowMapper(Class<T> type) {
+        if (!JdbiRowMapping.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName() + " is not annotated with @JdbiRow");
+        }
+        this.type = type;
+        try {
+            this.prototype = (JdbiRowMapping) type.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot map rows to " + type.getName() + ", it needs a public no-args constructor", e);
+        }
+        String[] columns = prototype.jdbiRowColumns();
+        this.fields = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = normalize(columns[i]);
+        }
+        this.attribute = "jdbi.row." + type.getName();
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        ColumnIndexes columns = (ColumnIndexes) ctx.getAttribute(attribute);
+        if (columns == null || columns.resultSet != r) {
+            columns = new ColumnIndexes(r, resolve(r.getMetaData()));
+            ctx.setAttribute(attribute, columns);
+        }
+        JdbiRowMapping row = prototype.newJdbiRow();
+        row.readJdbiRow(r, columns.indexes);
+        return (T) row;
+    }
+
+    private int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> byName = new HashMap<String, Integer>();
+        for (int column = metaData.getColumnCount(); column > 0; column--) {
+            // iterate backwards so that the first of duplicated labels wins
+            byName.put(normalize(metaData.getColumnLabel(column)), column);
+        }
+        int[] indexes = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Integer column = byName.get(fields[i]);
+            indexes[i] = column != null ? column : 0;
+        }
+        return indexes;
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static final class ColumnIndexes {
+        private final ResultSet resultSet;
+        private final int[] indexes;
+
+        private ColumnIndexes(ResultSet resultSet, int[] indexes) {
+            this.resultSet = resultSet;
+            this.indexes = indexes;
+        }
+    }
+
+    public static Boolean getBooleanObject(ResultSet resultSet, int column) throws SQLException {
+        boolean value = resultSet.getBoolean(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Byte getByteObject(ResultSet resultSet, int column) throws SQLException {
+        byte value = resultSet.getByte(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Short getShortObject(ResultSet resultSet, int column) throws SQLException {
+        short value = resultSet.getShort(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Integer getIntegerObject(ResultSet resultSet, int column) throws SQLException {
+        int value = resultSet.getInt(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Long getLongObject(ResultSet resultSet, int column) throws SQLException {
+        long value = resultSet.getLong(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Float getFloatObject(ResultSet resultSet, int column) throws SQLException {
+        float value = resultSet.getFloat(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static Double getDoubleObject(ResultSet resultSet, int column) throws SQLException {
+        double value = resultSet.getDouble(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    public static char getChar(ResultSet resultSet, int column) throws SQLException {
+        String value = resultSet.getString(column);
+        return value != null && value.length() > 0 ? value.charAt(0) : '\0';
+    }
+
+    public static Character getCharacterObject(ResultSet resultSet, int column) throws SQLException {
+        String value = resultSet.getString(column);
+        return value != null && value.length() > 0 ? value.charAt(0) : null;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.ResultSetMapperFactory;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Supplies a {@code JdbiRowMapper} for every {@code @JdbiRow} class. It is
+ * registered on every {@code DBI} created by {@code JdbiConnector}, thus
+ * {@code handle.createQuery(sql).mapTo(Person).list()} needs no further setup.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiRowMapperFactory implements ResultSetMapperFactory {
+    private static final JdbiRowMapperFactory INSTANCE;
+
+    private final ConcurrentMap<Class<?>, JdbiRowMapper<?>> mappers = new ConcurrentHashMap<Class<?>, JdbiRowMapper<?>>();
+
+    static {
+        INSTANCE = new JdbiRowMapperFactory();
+    }
+
+    public static JdbiRowMapperFactory getInstance() {
+        return INSTANCE;
+    }
+
+    private JdbiRowMapperFactory() {}
+
+    public boolean accepts(Class type, StatementContext ctx) {
+        return JdbiRowMapping.class.isAssignableFrom(type);
+    }
+
+    public ResultSetMapper mapperFor(Class type, StatementContext ctx) {
+        return getMapper(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> JdbiRowMapper<T> getMapper(Class<T> type) {
+        JdbiRowMapper<T> mapper = (JdbiRowMapper<T>) mappers.get(type);
+        if (mapper == null) {
+            mapper = new JdbiRowMapper<T>(type);
+            JdbiRowMapper<T> existing = (JdbiRowMapper<T>) mappers.putIfAbsent(type, mapper);
+            if (existing != null) mapper = existing;
+        }
+        return mapper;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Implemented by classes annotated with {@code @JdbiRow}. The methods are
+ * generated at compile time and read columns into fields directly; they are
+ * not meant to be called by application code, use
+ * {@code query.mapTo(Type)} instead.
+ *
+ * @author Andres Almiray
+ */
+public interface JdbiRowMapping {
+    /**
+     * Names of the mapped fields, in the order expected by {@link #readJdbiRow(ResultSet, int[])}.
+     */
+    String[] jdbiRowColumns();
+
+    /**
+     * Creates a new, empty row of the same type.
+     */
+    JdbiRowMapping newJdbiRow();
+
+    /**
+     * Reads the current row into this instance. {@code columns[i]} holds the
+     * 1-based column index of the i-th field, or {@code 0} if the result set
+     * has no such column.
+     */
+    void readJdbiRow(ResultSet resultSet, int[] columns) throws SQLException;
+}
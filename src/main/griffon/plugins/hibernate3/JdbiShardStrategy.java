@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import java.util.Arrays;
+
+/**
+ * Maps shard keys to shard indexes. Resolving a {@code long} key allocates
+ * nothing; other keys are resolved by their numeric value when they are
+ * {@code Number}s and by their hash code otherwise.
+ *
+ * @author Andres Almiray
+ */
+public abstract class JdbiShardStrategy {
+    /**
+     * Returns the index of the shard that holds the given key, between
+     * {@code 0} and {@code getShardCount() - 1}.
+     */
+    public abstract int shardFor(long key);
+
+    public abstract int getShardCount();
+
+    public int shardFor(Object key) {
+        if (key instanceof Number) return shardFor(((Number) key).longValue());
+        return shardFor((long) (key != null ? key.hashCode() : 0));
+    }
+
+    /**
+     * Spreads keys evenly over {@code shards} shards by the remainder of
+     * their division. Changing the number of shards moves most keys.
+     */
+    public static JdbiShardStrategy modulo(int shards) {
+        return new Modulo(shards);
+    }
+
+    /**
+     * Assigns contiguous ranges of keys to shards. {@code lowerBounds} holds
+     * the first key of every shard but the first one, in ascending order, thus
+     * {@code n} bounds define {@code n + 1} shards.
+     */
+    public static JdbiShardStrategy range(long... lowerBounds) {
+        return new Range(lowerBounds);
+    }
+
+    /**
+     * Places every shard on a hash ring {@code virtualNodes} times. Adding or
+     * removing a shard only moves the keys of the ring segments it owns.
+     */
+    public static JdbiShardStrategy consistentHash(String[] shardNames, int virtualNodes) {
+        return new ConsistentHash(shardNames, virtualNodes);
+    }
+
+    // finalizer of MurmurHash3, scatters sequential keys over the whole ring
+    static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static class Modulo extends JdbiShardStrategy {
+        private final int shards;
+
+        private Modulo(int shards) {
+            if (shards <= 0) throw new IllegalArgumentException("Number of shards must be greater than zero, got " + shards);
+            this.shards = shards;
+        }
+
+        public int shardFor(long key) {
+            int shard = (int) (key % shards);
+            return shard < 0 ? shard + shards : shard;
+        }
+
+        public int getShardCount() {
+            return shards;
+        }
+    }
+
+    private static class Range extends JdbiShardStrategy {
+        private final long[] lowerBounds;
+
+        private Range(long[] lowerBounds) {
+            this.lowerBounds = lowerBounds.clone();
+            for (int i = 1; i < this.lowerBounds.length; i++) {
+                if (this.lowerBounds[i] <= this.lowerBounds[i - 1]) {
+                    throw new IllegalArgumentException("Shard ranges must be in ascending order: " + Arrays.toString(lowerBounds));
+                }
+            }
+        }
+
+        public int shardFor(long key) {
+            int index = Arrays.binarySearch(lowerBounds, key);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        public int getShardCount() {
+            return lowerBounds.length + 1;
+        }
+    }
+
+    private static class ConsistentHash extends JdbiShardStrategy {
+        private final int shards;
+        private final int[] points;
+        private final int[] owners;
+
+        private ConsistentHash(String[] shardNames, int virtualNodes) {
+            if (shardNames.length == 0) throw new IllegalArgumentException("At least one shard is required");
+            if (virtualNodes <= 0) throw new IllegalArgumentException("Number of virtual nodes must be greater than zero, got " + virtualNodes);
+            shards = shardNames.length;
+
+            // points are derived from names so that a shard keeps its segments when others come and go
+            long[] ring = new long[shards * virtualNodes];
+            for (int shard = 0; shard < shards; shard++) {
+                for (int node = 0; node < virtualNodes; node++) {
+                    int point = mix(((long) shardNames[shard].hashCode() << 32) | node);
+                    ring[shard * virtualNodes + node] = ((long) point << 32) | shard;
+                }
+            }
+            Arrays.sort(ring);
+            points = new int[ring.length];
+            owners = new int[ring.length];
+            for (int i = 0; i < ring.length; i++) {
+                points[i] = (int) (ring[i] >> 32);
+                owners[i] = (int) ring[i];
+            }
+        }
+
+        public int shardFor(long key) {
+            int index = Arrays.binarySearch(points, mix(key));
+            if (index < 0) index = -index - 1;
+            return owners[index < points.length ? index : 0];
+        }
+
+        public int getShardCount() {
+            return shards;
+        }
+    }
+}
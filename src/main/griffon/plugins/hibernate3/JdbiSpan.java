@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A finished, sampled {@code withJdbi} or {@code withJdbiHandle} call as
+ * exported to a {@code JdbiSpanSink}. Durations are in microseconds.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiSpan {
+    private final String spanId;
+    private final String parentId;
+    private final String dataSourceName;
+    private final String caller;
+    private final String threadName;
+    private final long startTime;
+    private final long duration;
+    private final boolean success;
+
+    public JdbiSpan(String spanId, String parentId, String dataSourceName, String caller, String threadName,
+                    long startTime, long duration, boolean success) {
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.dataSourceName = dataSourceName;
+        this.caller = caller;
+        this.threadName = threadName;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.success = success;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Id of the span this one is nested in, or {@code null}.
+     */
+    public String getParentId() {
+        return parentId;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    /**
+     * The application frame that made the call, e.g.
+     * {@code sample.SampleController$_closure1.doCall(SampleController.groovy:12)}.
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Wall clock time at which the call started, in milliseconds since the epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("spanId", spanId);
+        map.put("parentId", parentId);
+        map.put("dataSource", dataSourceName);
+        map.put("caller", caller);
+        map.put("thread", threadName);
+        map.put("startTime", startTime);
+        map.put("duration", duration);
+        map.put("success", success);
+        return map;
+    }
+
+    /**
+     * Renders this span as a single line JSON object.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(256).append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : toMap().entrySet()) {
+            if (!first) json.append(',');
+            first = false;
+            quote(json, entry.getKey()).append(':');
+            Object value = entry.getValue();
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                quote(json, String.valueOf(value));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    public String toString() {
+        return "JdbiSpan[" + spanId + ", dataSource=" + dataSourceName + ", caller=" + caller +
+            ", duration=" + duration + "us, success=" + success + "]";
+    }
+
+    private static StringBuilder quote(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"');
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+/**
+ * Receives the spans sampled by {@code JdbiTracer}. Spans are exported from
+ * the thread that made the call, thus implementations must be thread safe
+ * and should not block.
+ *
+ * @author Andres Almiray
+ */
+public interface JdbiSpanSink {
+    void export(JdbiSpan span);
+
+    void close();
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reduces SQL statements to their shape: literal values are replaced by
+ * {@code ?}, lists of placeholders inside {@code in (...)} collapse into a
+ * single one, {@code /* *}{@code /} and {@code --} comments are dropped and
+ * runs of whitespace collapse into a single space. Statements that differ
+ * only in their literals or in the length of their {@code in} lists therefore
+ * share the same shape.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiSqlNormalizer {
+    private static final int MAX_CACHED = 2048;
+    private static final ConcurrentMap<String, String> CACHE = new ConcurrentHashMap<String, String>();
+
+    private JdbiSqlNormalizer() {}
+
+    public static String normalize(String sql) {
+        if (sql == null) return null;
+        String shape = CACHE.get(sql);
+        if (shape == null) {
+            shape = doNormalize(sql);
+            if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+            CACHE.put(sql, shape);
+        }
+        return shape;
+    }
+
+    private static String doNormalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        // for each open parenthesis, where its contents start in out if it opens an in list, -1 otherwise
+        int[] parens = new int[8];
+        int depth = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // string literal, '' is an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                appendPlaceholder(out, depth > 0 ? parens[depth - 1] : -1);
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                appendSpace(out);
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+                appendSpace(out);
+            } else if (Character.isDigit(c) && !partOfIdentifier(out)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                appendPlaceholder(out, depth > 0 ? parens[depth - 1] : -1);
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) i++;
+                appendSpace(out);
+            } else if (c == '?') {
+                i++;
+                appendPlaceholder(out, depth > 0 ? parens[depth - 1] : -1);
+            } else {
+                if (c == '(') {
+                    if (depth == parens.length) parens = Arrays.copyOf(parens, depth * 2);
+                    parens[depth++] = endsWithIn(out) ? out.length() + 1 : -1;
+                } else if (c == ')' && depth > 0) {
+                    depth--;
+                }
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString().trim();
+    }
+
+    private static void appendSpace(StringBuilder out) {
+        if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') out.append(' ');
+    }
+
+    /**
+     * Appends a placeholder unless it would extend a list made only of
+     * placeholders that starts at {@code listStart}, so that
+     * {@code in (1, 2, 3)} and {@code in (?, ?)} become {@code in (?)}.
+     */
+    private static void appendPlaceholder(StringBuilder out, int listStart) {
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') end--;
+        if (listStart >= 0 && end > listStart && out.charAt(end - 1) == ',') {
+            int prev = end - 1;
+            while (prev > listStart && out.charAt(prev - 1) == ' ') prev--;
+            // "?" is all a collapsed list holds
+            if (prev - 1 >= listStart && out.charAt(prev - 1) == '?' && onlyPlaceholder(out, listStart, prev)) {
+                out.setLength(prev);
+                return;
+            }
+        }
+        out.append('?');
+    }
+
+    private static boolean onlyPlaceholder(StringBuilder out, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = out.charAt(i);
+            if (c != '?' && c != ' ') return false;
+        }
+        return true;
+    }
+
+    private static boolean endsWithIn(StringBuilder out) {
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) == ' ') end--;
+        if (end < 2) return false;
+        char n = out.charAt(end - 1);
+        char i = out.charAt(end - 2);
+        if ((i != 'i' && i != 'I') || (n != 'n' && n != 'N')) return false;
+        return end == 2 || !Character.isJavaIdentifierPart(out.charAt(end - 3));
+    }
+
+    private static boolean partOfIdentifier(StringBuilder out) {
+        if (out.length() == 0) return false;
+        char last = out.charAt(out.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$' || last == '"' || last == '.';
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves statement names into SQL templates stored as {@code <name>.sql}
+ * files in the classpath, under a configurable path. Templates are read once
+ * and cached for the life of the {@code DBI}. Anything that looks like SQL
+ * already is returned as is.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiTemplateStatementLocator implements StatementLocator {
+    private static final ConcurrentMap<String, JdbiTemplateStatementLocator> LOCATORS = new ConcurrentHashMap<String, JdbiTemplateStatementLocator>();
+
+    private final String path;
+    private final ClassLoader classLoader;
+    private final ConcurrentMap<String, String> templates = new ConcurrentHashMap<String, String>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public JdbiTemplateStatementLocator(String path, ClassLoader classLoader) {
+        this.path = path.endsWith("/") ? path : path + "/";
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the locator registered on the {@code DBI} of the given datasource, if any.
+     */
+    public static JdbiTemplateStatementLocator get(String dataSourceName) {
+        return LOCATORS.get(dataSourceName);
+    }
+
+    static void register(String dataSourceName, JdbiTemplateStatementLocator locator) {
+        LOCATORS.put(dataSourceName, locator);
+    }
+
+    static void unregister(String dataSourceName) {
+        LOCATORS.remove(dataSourceName);
+    }
+
+    public String locate(String name, StatementContext ctx) throws Exception {
+        if (looksLikeSql(name)) return name;
+
+        String sql = templates.get(name);
+        if (sql != null) {
+            hits.incrementAndGet();
+            return sql;
+        }
+
+        misses.incrementAndGet();
+        sql = load(name);
+        String previous = templates.putIfAbsent(name, sql);
+        return previous != null ? previous : sql;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        return templates.size();
+    }
+
+    private String load(String name) throws IOException {
+        String resource = path + name.replace('.', '/') + ".sql";
+        InputStream in = classLoader.getResourceAsStream(resource);
+        // not a template: let the driver complain about it
+        if (in == null) return name;
+
+        StringBuilder sql = new StringBuilder();
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        try {
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sql.append(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return sql.toString().trim();
+    }
+
+    private static boolean looksLikeSql(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isWhitespace(c) || c == ':' || c == '?' || c == '(') return true;
+        }
+        return false;
+    }
+}
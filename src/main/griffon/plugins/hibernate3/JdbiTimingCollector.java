@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates statement latencies of a single datasource by SQL shape (see
+ * {@link JdbiSqlNormalizer}). The number of distinct shapes is bounded; once
+ * the limit is reached new shapes are accounted under {@code OTHER}.
+ * Statements slower than the configured threshold are logged on the
+ * {@code griffon.plugins.jdbi.SlowQueries} logger.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiTimingCollector implements TimingCollector {
+    private static final Logger SLOW_QUERIES = LoggerFactory.getLogger("griffon.plugins.jdbi.SlowQueries");
+    private static final ConcurrentMap<String, JdbiTimingCollector> COLLECTORS = new ConcurrentHashMap<String, JdbiTimingCollector>();
+    public static final String OTHER = "<other>";
+
+    private final String dataSourceName;
+    private final long slowQueryThresholdNanos;
+    private final int maxStatements;
+    private final ConcurrentMap<String, StatementStats> statements = new ConcurrentHashMap<String, StatementStats>();
+
+    public JdbiTimingCollector(String dataSourceName, long slowQueryThresholdMillis, int maxStatements) {
+        this.dataSourceName = dataSourceName;
+        this.slowQueryThresholdNanos = slowQueryThresholdMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis) : Long.MAX_VALUE;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * Returns the collector registered on the {@code DBI} of the given datasource, if any.
+     */
+    public static JdbiTimingCollector get(String dataSourceName) {
+        return COLLECTORS.get(dataSourceName);
+    }
+
+    static void register(String dataSourceName, JdbiTimingCollector collector) {
+        COLLECTORS.put(dataSourceName, collector);
+    }
+
+    static void unregister(String dataSourceName) {
+        COLLECTORS.remove(dataSourceName);
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public void collect(long elapsedTime, StatementContext ctx) {
+        // the statement as located, before rewriting adds anything to it such as a trace comment
+        String sql = ctx.getLocatedSql();
+        if (sql == null) sql = ctx.getRawSql();
+        String shape = JdbiSqlNormalizer.normalize(sql);
+        statsFor(shape).record(elapsedTime);
+
+        if (elapsedTime >= slowQueryThresholdNanos && SLOW_QUERIES.isWarnEnabled()) {
+            SLOW_QUERIES.warn("[" + dataSourceName + "] " + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + "ms " + shape);
+        }
+    }
+
+    public List<StatementStats> getStatements() {
+        return new ArrayList<StatementStats>(statements.values());
+    }
+
+    public List<StatementStats> getSlowest(int n) {
+        return top(n, new Comparator<StatementStats>() {
+            public int compare(StatementStats a, StatementStats b) {
+                return compareLongs(b.getMaxNanos(), a.getMaxNanos());
+            }
+        });
+    }
+
+    public List<StatementStats> getMostCalled(int n) {
+        return top(n, new Comparator<StatementStats>() {
+            public int compare(StatementStats a, StatementStats b) {
+                return compareLongs(b.getCount(), a.getCount());
+            }
+        });
+    }
+
+    public void reset() {
+        statements.clear();
+    }
+
+    private List<StatementStats> top(int n, Comparator<StatementStats> comparator) {
+        List<StatementStats> list = getStatements();
+        Collections.sort(list, comparator);
+        return list.size() > n ? new ArrayList<StatementStats>(list.subList(0, Math.max(n, 0))) : list;
+    }
+
+    private StatementStats statsFor(String shape) {
+        StatementStats stats = statements.get(shape);
+        if (stats == null) {
+            if (statements.size() >= maxStatements) shape = OTHER;
+            StatementStats created = new StatementStats(shape);
+            stats = statements.putIfAbsent(shape, created);
+            if (stats == null) stats = created;
+        }
+        return stats;
+    }
+
+    private static int compareLongs(long a, long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Latency totals of a single SQL shape.
+     */
+    public static class StatementStats {
+        private final String sql;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long current = maxNanos.get();
+            while (nanos > current && !maxNanos.compareAndSet(current, nanos)) {
+                current = maxNanos.get();
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanMillis() {
+            long n = count.get();
+            return n == 0 ? 0d : totalNanos.get() / (n * 1000000d);
+        }
+
+        @Override
+        public String toString() {
+            return sql + " [count=" + getCount() + ", mean=" + getMeanMillis() + "ms, max=" + TimeUnit.NANOSECONDS.toMillis(getMaxNanos()) + "ms]";
+        }
+    }
+}
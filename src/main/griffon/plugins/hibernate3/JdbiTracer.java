@@ -0,0 +1,261 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+
+/**
+ * Samples {@code withJdbi} and {@code withJdbiHandle} calls and records who
+ * made them. The caller is found by walking the stack past the plugin and
+ * Groovy runtime frames, which is only done for sampled calls; unsampled
+ * calls pay a thread local read and a counter increment. Calls nested in a
+ * sampled call are always traced and share its caller.
+ * <p>
+ * Enable it in {@code Config.groovy} with {@code griffon.jdbi.tracing.enabled = true}.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiTracer {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiTracer.class);
+    private static final JdbiTracer INSTANCE;
+
+    private static final String[] SKIPPED_PACKAGES = {
+        "griffon.plugins.jdbi.",
+        "org.codehaus.groovy.",
+        "groovy.",
+        "java.",
+        "javax.",
+        "sun.",
+        "jdk.",
+        "org.skife.jdbi."
+    };
+
+    private final ThreadLocal<TraceState> state = new ThreadLocal<TraceState>() {
+        @Override
+        protected TraceState initialValue() {
+            return new TraceState();
+        }
+    };
+    private final AtomicLong ids = new AtomicLong(System.nanoTime());
+    private volatile boolean enabled;
+    private volatile int sampleInterval = 100;
+    private volatile boolean sqlComment;
+    private volatile JdbiSpanSink sink;
+
+    static {
+        INSTANCE = new JdbiTracer();
+    }
+
+    public static JdbiTracer getInstance() {
+        return INSTANCE;
+    }
+
+    private JdbiTracer() {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled && sink != null;
+    }
+
+    /**
+     * Sets the fraction of top level calls that are traced, between 0 and 1.
+     */
+    public void setSampleRate(double sampleRate) {
+        sampleInterval = sampleRate <= 0d ? Integer.MAX_VALUE : (int) Math.max(1L, Math.round(1d / Math.min(1d, sampleRate)));
+    }
+
+    public double getSampleRate() {
+        return sampleInterval == Integer.MAX_VALUE ? 0d : 1d / sampleInterval;
+    }
+
+    public boolean isSqlComment() {
+        return sqlComment;
+    }
+
+    public JdbiSpanSink getSink() {
+        return sink;
+    }
+
+    public synchronized void setSink(JdbiSpanSink sink) {
+        JdbiSpanSink previous = this.sink;
+        this.sink = sink;
+        if (sink == null) enabled = false;
+        if (previous != null && previous != sink) previous.close();
+    }
+
+    /**
+     * Reads the {@code griffon.jdbi.tracing} settings, replacing the current sink.
+     */
+    public synchronized void configure(GriffonApplication app) {
+        boolean on = getConfigValueAsBoolean(app.getConfig(), "griffon.jdbi.tracing.enabled", false);
+        Object rate = getConfigValue(app.getConfig(), "griffon.jdbi.tracing.sampleRate", 0.01d);
+        setSampleRate(rate instanceof Number ? ((Number) rate).doubleValue() : Double.parseDouble(String.valueOf(rate)));
+        sqlComment = getConfigValueAsBoolean(app.getConfig(), "griffon.jdbi.tracing.sqlComment", false);
+        setSink(on ? createSink(app) : null);
+        setEnabled(on);
+    }
+
+    /**
+     * Disables tracing and closes the sink.
+     */
+    public void shutdown() {
+        setSink(null);
+    }
+
+    /**
+     * Opens a span for a call on the given datasource. Returns {@code null}
+     * when tracing is disabled or the call was not sampled.
+     */
+    public Scope start(String dataSourceName) {
+        if (!enabled) return null;
+        TraceState ts = state.get();
+        Scope parent = ts.current;
+        String caller;
+        if (parent != null) {
+            caller = parent.caller;
+        } else {
+            if (++ts.calls % sampleInterval != 0) return null;
+            caller = findCaller();
+        }
+        Scope scope = new Scope(nextId(), parent, dataSourceName, caller);
+        ts.current = scope;
+        return scope;
+    }
+
+    /**
+     * Closes a span opened by {@link #start(String)} and exports it.
+     */
+    public void finish(Scope scope, boolean success) {
+        if (scope == null) return;
+        long duration = (System.nanoTime() - scope.startNanos) / 1000L;
+        state.get().current = scope.parent;
+        JdbiSpanSink s = sink;
+        if (s == null) return;
+        try {
+            s.export(new JdbiSpan(scope.spanId, scope.parent != null ? scope.parent.spanId : null,
+                scope.dataSourceName, scope.caller, Thread.currentThread().getName(),
+                scope.startMillis, duration, success));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not export span " + scope.spanId, e);
+        }
+    }
+
+    /**
+     * Returns the span active on the current thread, if any.
+     */
+    public Scope current() {
+        return enabled ? state.get().current : null;
+    }
+
+    private JdbiSpanSink createSink(GriffonApplication app) {
+        Object sink = getConfigValue(app.getConfig(), "griffon.jdbi.tracing.sink", "ringBuffer");
+        if (sink instanceof JdbiSpanSink) return (JdbiSpanSink) sink;
+        if (sink instanceof Class) {
+            try {
+                return (JdbiSpanSink) ((Class<?>) sink).newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Cannot create span sink " + sink, e);
+            }
+        }
+        if ("jsonFile".equals(sink)) {
+            String path = getConfigValueAsString(app.getConfig(), "griffon.jdbi.tracing.jsonFile.path", "jdbi-spans.json");
+            int queueSize = getConfigValueAsInt(app.getConfig(), "griffon.jdbi.tracing.jsonFile.queueSize", 4096);
+            return new JdbiJsonFileSpanSink(new File(path), Math.max(1, queueSize));
+        }
+        if ("ringBuffer".equals(sink)) {
+            int size = getConfigValueAsInt(app.getConfig(), "griffon.jdbi.tracing.ringBuffer.size", 1024);
+            return new JdbiRingBufferSpanSink(Math.max(1, size));
+        }
+        throw new IllegalArgumentException("Unknown span sink '" + sink + "'. Valid values are ringBuffer, jsonFile, a JdbiSpanSink class or instance");
+    }
+
+    private String nextId() {
+        // spread consecutive ids so that they are easy to tell apart in logs
+        long z = ids.incrementAndGet() * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        String hex = Long.toHexString(z ^ (z >>> 31));
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static String findCaller() {
+        StackTraceElement[] frames = new Throwable().getStackTrace();
+        for (StackTraceElement frame : frames) {
+            if (skip(frame)) continue;
+            return frame.toString();
+        }
+        return "unknown";
+    }
+
+    private static boolean skip(StackTraceElement frame) {
+        String className = frame.getClassName();
+        for (String prefix : SKIPPED_PACKAGES) {
+            if (className.startsWith(prefix)) return true;
+        }
+        String method = frame.getMethodName();
+        // injected methods and the reflection/call site glue around them
+        return method.startsWith("withJdbi") || "openJdbiStream".equals(method) || "fetchJdbiColumns".equals(method) || className.contains("$$");
+    }
+
+    private static final class TraceState {
+        private Scope current;
+        private long calls;
+    }
+
+    /**
+     * An open span. Nested calls on the same thread become its children.
+     */
+    public static final class Scope {
+        private final String spanId;
+        private final Scope parent;
+        private final String dataSourceName;
+        private final String caller;
+        private final long startMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+
+        private Scope(String spanId, Scope parent, String dataSourceName, String caller) {
+            this.spanId = spanId;
+            this.parent = parent;
+            this.dataSourceName = dataSourceName;
+            this.caller = caller;
+        }
+
+        public String getSpanId() {
+            return spanId;
+        }
+
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+    }
+}
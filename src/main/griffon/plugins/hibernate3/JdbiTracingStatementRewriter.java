@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.Binding;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.skife.jdbi.v2.tweak.StatementRewriter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Tags statements executed inside a sampled call with the span that issued
+ * them. The span is stored as the {@code jdbi.span} statement attribute and,
+ * if enabled, prepended to the SQL as a comment so that it shows up in the
+ * database's own slow query log (at the cost of prepared statement caching,
+ * as every traced statement becomes unique):
+ * <pre>
+ * /&#42; jdbi span=3f9a0c... ds=default caller=sample.SampleController.list(SampleController.groovy:12) &#42;/ select ...
+ * </pre>
+ * Statements outside a sampled call are passed through unchanged.
+ *
+ * @author Andres Almiray
+ */
+public class JdbiTracingStatementRewriter implements StatementRewriter {
+    public static final String SPAN_ATTRIBUTE = "jdbi.span";
+
+    private final StatementRewriter delegate;
+    private final boolean sqlComment;
+
+    public JdbiTracingStatementRewriter(StatementRewriter delegate, boolean sqlComment) {
+        this.delegate = delegate;
+        this.sqlComment = sqlComment;
+    }
+
+    public StatementRewriter getDelegate() {
+        return delegate;
+    }
+
+    public RewrittenStatement rewrite(String sql, Binding params, StatementContext ctx) {
+        JdbiTracer.Scope scope = JdbiTracer.getInstance().current();
+        if (scope == null) return delegate.rewrite(sql, params, ctx);
+        ctx.setAttribute(SPAN_ATTRIBUTE, scope.getSpanId());
+        if (!sqlComment) return delegate.rewrite(sql, params, ctx);
+        String comment = "/* jdbi span=" + scope.getSpanId() +
+            " ds=" + sanitize(scope.getDataSourceName()) +
+            " caller=" + sanitize(scope.getCaller()) + " */ ";
+        // the comment is added after rewriting, so a caching delegate still sees the original statement
+        return new CommentedStatement(delegate.rewrite(sql, params, ctx), comment);
+    }
+
+    private static String sanitize(String s) {
+        return s == null ? "" : s.replace("*/", "* /").replace("/*", "/ *");
+    }
+
+    private static class CommentedStatement implements RewrittenStatement {
+        private final RewrittenStatement statement;
+        private final String comment;
+
+        private CommentedStatement(RewrittenStatement statement, String comment) {
+            this.statement = statement;
+            this.comment = comment;
+        }
+
+        public void bind(Binding params, PreparedStatement preparedStatement) throws SQLException {
+            statement.bind(params, preparedStatement);
+        }
+
+        public String getSql() {
+            return comment + statement.getSql();
+        }
+    }
+}
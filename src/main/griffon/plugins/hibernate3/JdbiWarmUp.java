@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens a number of pooled connections in parallel right after a datasource
+ * is connected, validating each one and running a few statements on it, so
+ * that the first real queries do not pay for connection setup and for the
+ * warm-up of the driver code path.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiWarmUp {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiWarmUp.class);
+
+    private JdbiWarmUp() {}
+
+    /**
+     * Opens {@code connections} connections at the same time, so that each of
+     * them is a distinct pooled connection, and returns them to the pool once
+     * all are open or {@code timeoutSeconds} have elapsed.
+     */
+    public static Result run(final String dataSourceName, final DataSource dataSource, int connections,
+                             final String validationQuery, final List<String> statements, int timeoutSeconds) {
+        long start = System.nanoTime();
+        final CountDownLatch opened = new CountDownLatch(connections);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(connections);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(connections, new JdbiThreadFactory("jdbi-warmup-" + dataSourceName));
+        try {
+            for (int i = 0; i < connections; i++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        Connection connection = null;
+                        try {
+                            connection = dataSource.getConnection();
+                            validate(connection, validationQuery);
+                            execute(connection, statements);
+                        } catch (Throwable t) {
+                            failures.add(t);
+                        } finally {
+                            opened.countDown();
+                            awaitQuietly(release);
+                            closeQuietly(connection);
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            awaitQuietly(opened, timeoutSeconds);
+            release.countDown();
+            awaitQuietly(done, timeoutSeconds);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Result result = new Result(connections, connections - (int) done.getCount(), new ArrayList<Throwable>(failures), elapsed);
+        if (!result.getFailures().isEmpty()) {
+            LOG.warn("Warm-up of datasource '" + dataSourceName + "' had " + result.getFailures().size() + " failure(s)", result.getFailures().get(0));
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Warmed up " + connections + " connection(s) of datasource '" + dataSourceName + "' in " + elapsed + "ms");
+        }
+        return result;
+    }
+
+    static void validate(Connection connection, String validationQuery) throws SQLException {
+        if (validationQuery != null && validationQuery.length() > 0) {
+            execute(connection, Collections.singletonList(validationQuery));
+        } else if (!connection.isValid(5)) {
+            throw new SQLException("Connection is not valid", "08006");
+        }
+    }
+
+    private static void execute(Connection connection, List<String> statements) throws SQLException {
+        if (statements == null) return;
+        for (String sql : statements) {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        awaitQuietly(latch, Integer.MAX_VALUE);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch, int timeoutSeconds) {
+        try {
+            latch.await(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.debug("Could not close warm-up connection", e);
+        }
+    }
+
+    public static class Result {
+        private final int requested;
+        private final int completed;
+        private final List<Throwable> failures;
+        private final long elapsedMillis;
+
+        public Result(int requested, int completed, List<Throwable> failures, long elapsedMillis) {
+            this.requested = requested;
+            this.completed = completed;
+            this.failures = Collections.unmodifiableList(failures);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        /**
+         * Connections that finished warming up, successfully or not, before the timeout.
+         */
+        public int getCompleted() {
+            return completed;
+        }
+
+        public List<Throwable> getFailures() {
+            return failures;
+        }
+
+        public boolean isSuccessful() {
+            return failures.isEmpty() && completed == requested;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("requested", requested);
+            map.put("completed", completed);
+            map.put("failures", failures.size());
+            map.put("elapsed", elapsedMillis);
+            return map;
+        }
+
+        public String toString() {
+            return "JdbiWarmUp.Result" + toMap();
+        }
+    }
+}
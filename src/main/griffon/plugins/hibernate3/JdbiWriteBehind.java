@@ -0,0 +1,593 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded write-behind queue of a datasource for frequent small updates, such
+ * as counters or last-seen timestamps. Each write is a statement plus a key;
+ * a write whose statement and key are already waiting replaces the pending
+ * parameters instead of taking another slot, thus only the latest value of a
+ * key reaches the database. Statements should therefore be idempotent
+ * upserts. Parameters are copied when a write is queued, so the caller may
+ * reuse its map.
+ * <p>
+ * A daemon thread flushes pending writes in JDBC batches of {@code batchSize},
+ * one transaction per batch, as soon as that many writes are waiting or every
+ * {@code flushInterval} milliseconds otherwise. Within a batch writes are
+ * grouped by statement. A batch that fails is rolled back and its writes are
+ * queued again, unless a newer value arrived meanwhile, up to
+ * {@code maxRetries} times before they are dropped and logged.
+ * <p>
+ * {@code offer} never blocks and returns {@code false} when the queue is full;
+ * {@code put} waits for room. {@code close} refuses further writes and
+ * flushes everything still pending.
+ *
+ * @author Andres Almiray
+ */
+public final class JdbiWriteBehind {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiWriteBehind.class);
+
+    private final String dataSourceName;
+    private final int maxPending;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxRetries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    // serializes flushes so that writes of the same key reach the database in order
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final JdbiLatencyHistogram flushLatency = new JdbiLatencyHistogram();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean lastFlushFailed;
+
+    // guarded by lock
+    private LinkedHashMap<Key, Write> pending = new LinkedHashMap<Key, Write>();
+    private int maxDepth;
+    private boolean closed;
+
+    public JdbiWriteBehind(String dataSourceName, int maxPending, int batchSize, long flushIntervalMillis, int maxRetries) {
+        if (maxPending <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid write-behind settings for datasource '" + dataSourceName +
+                "': maxPending=" + maxPending + ", batchSize=" + batchSize + ", flushInterval=" + flushIntervalMillis);
+        }
+        this.dataSourceName = dataSourceName;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxRetries = Math.max(maxRetries, 0);
+        this.flusher = new JdbiThreadFactory("jdbi-write-behind-" + dataSourceName).newThread(new Runnable() {
+            public void run() {
+                runFlusher();
+            }
+        });
+        flusher.start();
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of writes waiting to be flushed.
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a write without blocking. Returns {@code false} if the queue is
+     * full and no write of the same statement and key is pending.
+     */
+    public boolean offer(String sql, Object key, Map<String, ?> params) {
+        Write write = new Write(sql, key, params);
+        lock.lock();
+        try {
+            checkOpen();
+            if (enqueue(write)) return true;
+        } finally {
+            lock.unlock();
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Queues a write, waiting up to the given time for room in the queue.
+     */
+    public boolean offer(String sql, Object key, Map<String, ?> params, long timeout, TimeUnit unit) throws InterruptedException {
+        Write write = new Write(sql, key, params);
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            checkOpen();
+            while (!enqueue(write)) {
+                if (remaining <= 0L) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+                checkOpen();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a write, waiting for room in the queue as long as needed.
+     */
+    public void put(String sql, Object key, Map<String, ?> params) throws InterruptedException {
+        Write write = new Write(sql, key, params);
+        lock.lockInterruptibly();
+        try {
+            checkOpen();
+            while (!enqueue(write)) {
+                notFull.await();
+                checkOpen();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every pending write on the calling thread. Returns the number of
+     * writes flushed; stops at the first batch that fails.
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            int written = 0;
+            for (List<Write> batch = take(); !batch.isEmpty(); batch = take()) {
+                if (!write(batch)) break;
+                written += batch.size();
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Refuses further writes, waits for the flusher thread to finish the batch
+     * it may be writing, then flushes every write still pending, retrying
+     * failed batches right away up to {@code maxRetries} times. Writers
+     * blocked in {@code put} get an {@code IllegalStateException}.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            flushRequested.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while closing the write-behind queue of datasource '" + dataSourceName + "', " + getQueueDepth() + " write(s) were not flushed");
+            return;
+        }
+        // every failed attempt counts towards maxRetries, thus this ends
+        while (getQueueDepth() > 0) {
+            flush();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Closed the write-behind queue of datasource '" + dataSourceName + "', " + flushedWrites.get() + " write(s) flushed, " + failedWrites.get() + " dropped");
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        int depth;
+        int highWaterMark;
+        lock.lock();
+        try {
+            depth = pending.size();
+            highWaterMark = maxDepth;
+        } finally {
+            lock.unlock();
+        }
+        return new Snapshot(dataSourceName, depth, highWaterMark, maxPending, enqueued.get(), coalesced.get(),
+            rejected.get(), flushes.get(), flushedWrites.get(), failedWrites.get(), flushLatency.getMean(),
+            flushLatency.getPercentile(50), flushLatency.getPercentile(90), flushLatency.getPercentile(99), flushLatency.getMax());
+    }
+
+    // must hold lock
+    private boolean enqueue(Write write) {
+        if (pending.containsKey(write.key)) {
+            pending.put(write.key, write);
+            coalesced.incrementAndGet();
+            return true;
+        }
+        if (pending.size() >= maxPending) return false;
+        pending.put(write.key, write);
+        enqueued.incrementAndGet();
+        if (pending.size() > maxDepth) maxDepth = pending.size();
+        if (pending.size() == batchSize) flushRequested.signal();
+        return true;
+    }
+
+    // must hold lock
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Write-behind queue of datasource '" + dataSourceName + "' is closed");
+        }
+    }
+
+    private void runFlusher() {
+        boolean failed = false;
+        while (true) {
+            lock.lock();
+            try {
+                // after a failure wait a full interval before trying again
+                long remaining = flushIntervalNanos;
+                while (!closed && (failed || pending.size() < batchSize) && remaining > 0L) {
+                    remaining = flushRequested.awaitNanos(remaining);
+                }
+                if (closed) return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                flush();
+                failed = lastFlushFailed;
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected failure while flushing the write-behind queue of datasource '" + dataSourceName + "'", e);
+                failed = true;
+            }
+        }
+    }
+
+    private List<Write> take() {
+        lock.lock();
+        try {
+            List<Write> batch = new ArrayList<Write>(Math.min(batchSize, pending.size()));
+            for (Iterator<Write> writes = pending.values().iterator(); writes.hasNext() && batch.size() < batchSize; ) {
+                batch.add(writes.next());
+                writes.remove();
+            }
+            if (!batch.isEmpty()) notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean write(List<Write> batch) {
+        long start = System.nanoTime();
+        Handle handle = null;
+        try {
+            DBI dbi = JdbiHolder.getInstance().getJdbi(dataSourceName);
+            if (dbi == null) {
+                throw new IllegalStateException("Datasource '" + dataSourceName + "' is not connected");
+            }
+            handle = dbi.open();
+            handle.begin();
+            Map<String, PreparedBatch> statements = new LinkedHashMap<String, PreparedBatch>();
+            for (Write write : batch) {
+                PreparedBatch statement = statements.get(write.key.sql);
+                if (statement == null) {
+                    statement = handle.prepareBatch(write.key.sql);
+                    statements.put(write.key.sql, statement);
+                }
+                statement.add(write.params);
+            }
+            for (PreparedBatch statement : statements.values()) {
+                statement.execute();
+            }
+            handle.commit();
+            lastFlushFailed = false;
+        } catch (RuntimeException e) {
+            if (handle != null) rollbackQuietly(handle);
+            lastFlushFailed = true;
+            requeue(batch, e);
+            return false;
+        } finally {
+            if (handle != null) handle.close();
+            flushLatency.recordNanos(System.nanoTime() - start);
+            flushes.incrementAndGet();
+        }
+        flushedWrites.addAndGet(batch.size());
+        return true;
+    }
+
+    private void requeue(List<Write> batch, RuntimeException failure) {
+        int dropped = 0;
+        int overflow = 0;
+        lock.lock();
+        try {
+            // failed writes keep their place ahead of the ones queued since
+            LinkedHashMap<Key, Write> requeued = new LinkedHashMap<Key, Write>();
+            for (Write write : batch) {
+                if (pending.containsKey(write.key)) continue;
+                if (++write.attempts > maxRetries) {
+                    dropped++;
+                } else {
+                    requeued.put(write.key, write);
+                }
+            }
+            // writes offered while the batch was out may have filled the queue, the oldest failed ones give way
+            for (Iterator<Write> writes = requeued.values().iterator(); writes.hasNext() && requeued.size() + pending.size() > maxPending; ) {
+                writes.next();
+                writes.remove();
+                overflow++;
+            }
+            requeued.putAll(pending);
+            pending = requeued;
+        } finally {
+            lock.unlock();
+        }
+
+        if (overflow > 0) {
+            failedWrites.addAndGet(overflow);
+            LOG.error("Dropped " + overflow + " failed write(s) of datasource '" + dataSourceName + "', the queue is full", failure);
+        }
+        if (dropped > 0) {
+            failedWrites.addAndGet(dropped);
+            LOG.error("Dropped " + dropped + " write(s) of datasource '" + dataSourceName + "' after " + (maxRetries + 1) + " failed attempt(s)", failure);
+        } else if (overflow == 0) {
+            LOG.warn("Could not flush " + batch.size() + " write(s) of datasource '" + dataSourceName + "', will retry", failure);
+        }
+    }
+
+    private static void rollbackQuietly(Handle handle) {
+        try {
+            if (handle.isInTransaction()) handle.rollback();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not rollback transaction", e);
+        }
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final Object key;
+
+        private Key(String sql, Object key) {
+            this.sql = sql;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return sql.equals(other.sql) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + key.hashCode();
+        }
+    }
+
+    private static final class Write {
+        private final Key key;
+        private final Map<String, ?> params;
+        // guarded by flushLock
+        private int attempts;
+
+        private Write(String sql, Object key, Map<String, ?> params) {
+            if (sql == null || key == null || params == null) {
+                throw new IllegalArgumentException("A write needs a statement, a key and parameters, got sql=" + sql + ", key=" + key + ", params=" + params);
+            }
+            this.key = new Key(sql, key);
+            // the caller may reuse its map once the write is queued
+            this.params = new HashMap<String, Object>(params);
+        }
+    }
+
+    /**
+     * Immutable view of the metrics of a write-behind queue. Latencies are in
+     * microseconds.
+     */
+    public static class Snapshot {
+        private final String dataSourceName;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final int capacity;
+        private final long enqueued;
+        private final long coalesced;
+        private final long rejected;
+        private final long flushes;
+        private final long flushed;
+        private final long failed;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        public Snapshot(String dataSourceName, int queueDepth, int maxQueueDepth, int capacity, long enqueued,
+                        long coalesced, long rejected, long flushes, long flushed, long failed,
+                        double mean, long p50, long p90, long p99, long max) {
+            this.dataSourceName = dataSourceName;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.capacity = capacity;
+            this.enqueued = enqueued;
+            this.coalesced = coalesced;
+            this.rejected = rejected;
+            this.flushes = flushes;
+            this.flushed = flushed;
+            this.failed = failed;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Highest queue depth seen so far.
+         */
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Writes that took a slot in the queue.
+         */
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        /**
+         * Writes that replaced a pending write of the same key.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * Writes refused because the queue was full.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Batches attempted, including failed ones.
+         */
+        public long getFlushes() {
+            return flushes;
+        }
+
+        public long getFlushed() {
+            return flushed;
+        }
+
+        /**
+         * Writes dropped after exhausting their retries.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("dataSourceName", dataSourceName);
+            map.put("queueDepth", queueDepth);
+            map.put("maxQueueDepth", maxQueueDepth);
+            map.put("capacity", capacity);
+            map.put("enqueued", enqueued);
+            map.put("coalesced", coalesced);
+            map.put("rejected", rejected);
+            map.put("flushes", flushes);
+            map.put("flushed", flushed);
+            map.put("failed", failed);
+            map.put("mean", mean);
+            map.put("p50", p50);
+            map.put("p90", p90);
+            map.put("p99", p99);
+            map.put("max", max);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return toMap().toString();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.util.ApplicationHolder;
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import org.skife.jdbi.v2.DBI;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+
+/**
+ * Routes statements to one of several identical databases according to a
+ * shard key. Shards and the strategy that maps keys to them are either given
+ * to the constructor or read from the {@code shards} block of
+ * {@code DataSource.groovy}. Select it with
+ * {@code jdbiProvider = griffon.plugins.jdbi.ShardedJdbiProvider} in
+ * {@code Config.groovy}.
+ *
+ * @author Andres Almiray
+ */
+public class ShardedJdbiProvider extends AbstractJdbiProvider {
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private volatile Routing routing;
+
+    public ShardedJdbiProvider() {
+    }
+
+    public ShardedJdbiProvider(String[] shardNames, JdbiShardStrategy strategy) {
+        routing = new Routing(shardNames, strategy);
+    }
+
+    public String[] getShardNames() {
+        return routing().shardNames.clone();
+    }
+
+    public JdbiShardStrategy getStrategy() {
+        return routing().strategy;
+    }
+
+    public String resolveShard(long key) {
+        Routing r = routing();
+        return r.shardNames[r.strategy.shardFor(key)];
+    }
+
+    public String resolveShard(Object key) {
+        Routing r = routing();
+        return r.shardNames[r.strategy.shardFor(key)];
+    }
+
+    public <R> R withShard(long key, Closure<R> closure) {
+        return withJdbi(resolveShard(key), closure);
+    }
+
+    public <R> R withShard(long key, CallableWithArgs<R> callable) {
+        return withJdbi(resolveShard(key), callable);
+    }
+
+    public <R> R withShard(Object key, Closure<R> closure) {
+        return withJdbi(resolveShard(key), closure);
+    }
+
+    public <R> R withShard(Object key, CallableWithArgs<R> callable) {
+        return withJdbi(resolveShard(key), callable);
+    }
+
+    public <R> Map<String, R> withAllShards(Closure<R> closure) {
+        return closure != null ? withAllShards(asCallable(closure)) : null;
+    }
+
+    /**
+     * Runs the callable on every shard in parallel, using the async pool of
+     * each shard, and waits for all of them. Results are keyed by shard name in
+     * shard order. If any shard fails the remaining ones are cancelled and the
+     * failure is rethrown. Shards never run on the calling thread, a saturated
+     * pool fails the call instead.
+     */
+    public <R> Map<String, R> withAllShards(final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        String[] shardNames = routing().shardNames;
+        List<Future<R>> futures = new ArrayList<Future<R>>(shardNames.length);
+        try {
+            for (final String shard : shardNames) {
+                futures.add(JdbiExecutors.getInstance().fork(shard, new Callable<R>() {
+                    public R call() {
+                        return withJdbi(shard, callable);
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            cancel(futures);
+            throw e;
+        }
+
+        Map<String, R> results = new LinkedHashMap<String, R>();
+        try {
+            for (int i = 0; i < shardNames.length; i++) {
+                results.put(shardNames[i], futures.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting on shards", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    @Override
+    protected DBI getJdbi(String dataSourceName) {
+        return JdbiHolder.getInstance().fetchJdbi(dataSourceName);
+    }
+
+    private static <R> void cancel(List<Future<R>> futures) {
+        for (Future<R> future : futures) future.cancel(true);
+    }
+
+    private Routing routing() {
+        Routing r = routing;
+        if (r == null) {
+            synchronized (this) {
+                r = routing;
+                if (r == null) routing = r = createRouting();
+            }
+        }
+        return r;
+    }
+
+    private static Routing createRouting() {
+        Map config = JdbiConnector.shardsConfig(ApplicationHolder.getApplication());
+        Object names = config.get("dataSources");
+        if (!(names instanceof Collection) || ((Collection) names).isEmpty()) {
+            throw new IllegalStateException("No shards configured, set shards.dataSources in DataSource.groovy");
+        }
+        List<String> shardNames = new ArrayList<String>();
+        for (Object name : (Collection) names) shardNames.add(String.valueOf(name));
+        String[] shards = shardNames.toArray(new String[shardNames.size()]);
+
+        String strategy = getConfigValueAsString(config, "strategy", "consistentHash");
+        if ("modulo".equals(strategy)) {
+            return new Routing(shards, JdbiShardStrategy.modulo(shards.length));
+        } else if ("range".equals(strategy)) {
+            Object ranges = config.get("ranges");
+            if (!(ranges instanceof Collection)) {
+                throw new IllegalStateException("The range strategy requires shards.ranges in DataSource.groovy");
+            }
+            long[] bounds = new long[((Collection) ranges).size()];
+            int i = 0;
+            for (Object bound : (Collection) ranges) bounds[i++] = ((Number) bound).longValue();
+            return new Routing(shards, JdbiShardStrategy.range(bounds));
+        } else if ("consistentHash".equals(strategy)) {
+            int virtualNodes = getConfigValueAsInt(config, "virtualNodes", DEFAULT_VIRTUAL_NODES);
+            return new Routing(shards, JdbiShardStrategy.consistentHash(shards, virtualNodes));
+        }
+        throw new IllegalStateException("Unknown shard strategy '" + strategy + "', expected one of consistentHash, range or modulo");
+    }
+
+    private static class Routing {
+        private final String[] shardNames;
+        private final JdbiShardStrategy strategy;
+
+        private Routing(String[] shardNames, JdbiShardStrategy strategy) {
+            if (shardNames.length != strategy.getShardCount()) {
+                throw new IllegalArgumentException("Strategy expects " + strategy.getShardCount() + " shards but " + shardNames.length + " were given");
+            }
+            this.shardNames = shardNames.clone();
+            this.strategy = strategy;
+        }
+    }
+}
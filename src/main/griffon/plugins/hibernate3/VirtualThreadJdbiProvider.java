@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+import griffon.util.ApplicationHolder;
+import griffon.util.CallableWithArgs;
+import groovy.lang.Closure;
+import org.skife.jdbi.v2.DBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Runs {@code withJdbiAsync} bodies on virtual threads when the JVM supports
+ * them, so that the calling thread is never held while the database answers.
+ * {@code withJdbi} and {@code withJdbiHandle} bodies run in place on the
+ * calling thread, whose caller waits for them in any case.
+ * Concurrent bodies are capped per datasource by a semaphore sized to the
+ * connection pool. On JVMs without virtual threads {@code withJdbiAsync}
+ * falls back to the async executor of the datasource.
+ * Select it with {@code jdbiProvider = griffon.plugins.jdbi.VirtualThreadJdbiProvider}
+ * in {@code Config.groovy}.
+ *
+ * @author Andres Almiray
+ */
+public class VirtualThreadJdbiProvider extends AbstractJdbiProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadJdbiProvider.class);
+    private static final String DEFAULT = "default";
+    private static final int DEFAULT_PERMITS = 8;
+    // datasources whose permit is held by the current thread
+    private static final ThreadLocal<Set<String>> HELD = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new HashSet<String>();
+        }
+    };
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+    public VirtualThreadJdbiProvider() {
+        executor = createExecutor();
+        GriffonApplication app = ApplicationHolder.getApplication();
+        if (executor != null && app != null && getConfigValueAsBoolean(app.getConfig(), "griffon.jdbi.virtualThreads.pinning.report", true)) {
+            VirtualThreadPinningMonitor.start(app, getConfigValueAsInt(app.getConfig(), "griffon.jdbi.virtualThreads.pinning.threshold", 20));
+        }
+    }
+
+    @Override
+    public <R> R withJdbi(final String dataSourceName, final Closure<R> closure) {
+        if (closure == null) return null;
+        return withPermit(dataSourceName, new Callable<R>() {
+            public R call() {
+                return VirtualThreadJdbiProvider.super.withJdbi(dataSourceName, closure);
+            }
+        });
+    }
+
+    @Override
+    public <R> R withJdbi(final String dataSourceName, final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        return withPermit(dataSourceName, new Callable<R>() {
+            public R call() {
+                return VirtualThreadJdbiProvider.super.withJdbi(dataSourceName, callable);
+            }
+        });
+    }
+
+    @Override
+    public <R> R withJdbiHandle(final String dataSourceName, final CallableWithArgs<R> callable) {
+        if (callable == null) return null;
+        return withPermit(dataSourceName, new Callable<R>() {
+            public R call() {
+                return VirtualThreadJdbiProvider.super.withJdbiHandle(dataSourceName, callable);
+            }
+        });
+    }
+
+    @Override
+    public <R> JdbiFuture<R> withJdbiAsync(String dataSourceName, final CallableWithArgs<R> callable) {
+        if (executor == null) return super.withJdbiAsync(dataSourceName, callable);
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        if (callable == null) return null;
+        final String name = dataSourceName;
+        Map config = JdbiConnector.jdbiConfig(ApplicationHolder.getApplication(), name);
+        JdbiFuture<R> future = new JdbiFuture<R>(new Callable<R>() {
+            public R call() {
+                return withPermit(name, new Callable<R>() {
+                    public R call() {
+                        return VirtualThreadJdbiProvider.super.withJdbi(name, callable);
+                    }
+                });
+            }
+        }, getConfigValueAsBoolean(config, "async.callbacksInsideUI", true));
+        executor.execute(future);
+        return future;
+    }
+
+    @Override
+    protected DBI getJdbi(String dataSourceName) {
+        return JdbiHolder.getInstance().fetchJdbi(dataSourceName);
+    }
+
+    private <R> R withPermit(String dataSourceName, Callable<R> body) {
+        if (isBlank(dataSourceName)) dataSourceName = DEFAULT;
+        Set<String> held = HELD.get();
+        // nested calls on a datasource run under the permit of the outermost one
+        if (held.contains(dataSourceName)) return call(body);
+
+        Semaphore semaphore = resolvePermits(dataSourceName);
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a permit of datasource '" + dataSourceName + "'", e);
+        }
+        held.add(dataSourceName);
+        try {
+            return call(body);
+        } finally {
+            held.remove(dataSourceName);
+            semaphore.release();
+        }
+    }
+
+    private static <R> R call(Callable<R> body) {
+        try {
+            return body.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Semaphore resolvePermits(String dataSourceName) {
+        Semaphore semaphore = permits.get(dataSourceName);
+        if (semaphore == null) {
+            Map config = JdbiConnector.dataSourceConfig(ApplicationHolder.getApplication(), dataSourceName);
+            int size = getConfigValueAsInt(config, "jdbi.virtualThreads.permits", getConfigValueAsInt(config, "pool.maxActive", DEFAULT_PERMITS));
+            if (size <= 0) size = DEFAULT_PERMITS;
+            Semaphore created = new Semaphore(size, true);
+            semaphore = permits.putIfAbsent(dataSourceName, created);
+            if (semaphore == null) semaphore = created;
+        }
+        return semaphore;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            LOG.info("Virtual threads are not supported by this JVM; withJdbiAsync bodies run on the async executor");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package griffon.plugins.jdbi;
+
+import griffon.core.GriffonApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listens to {@code jdk.VirtualThreadPinned} flight recorder events, which
+ * are emitted when a virtual thread blocks while holding a monitor (for
+ * example inside a {@code synchronized} block of a JDBC driver or pool).
+ * Every pinning is logged and published as a {@code JdbiVirtualThreadPinned}
+ * event. The JFR API is reached by reflection as it is only available on
+ * recent JVMs; the monitor simply stays off anywhere else.
+ *
+ * @author Andres Almiray
+ */
+public final class VirtualThreadPinningMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final AtomicBoolean STARTED = new AtomicBoolean(false);
+    private static final AtomicLong PINNED_COUNT = new AtomicLong(0);
+
+    private VirtualThreadPinningMonitor() {}
+
+    public static long getPinnedCount() {
+        return PINNED_COUNT.get();
+    }
+
+    public static boolean isStarted() {
+        return STARTED.get();
+    }
+
+    static void start(final GriffonApplication app, long thresholdMillis) {
+        if (!STARTED.compareAndSet(false, true)) return;
+        try {
+            ClassLoader classLoader = VirtualThreadPinningMonitor.class.getClassLoader();
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> durationClass = Class.forName("java.time.Duration");
+            Class<?> consumerClass = Class.forName("java.util.function.Consumer");
+            final Class<?> eventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+
+            Object stream = streamClass.getConstructor().newInstance();
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Object threshold = durationClass.getMethod("ofMillis", long.class).invoke(null, thresholdMillis);
+            settingsClass.getMethod("withThreshold", durationClass).invoke(settings, threshold);
+            settingsClass.getMethod("withStackTrace").invoke(settings);
+
+            final Method getDuration = eventClass.getMethod("getDuration");
+            final Method toMillis = durationClass.getMethod("toMillis");
+            final Method getThread = eventClass.getMethod("getThread");
+            final Method getJavaName = Class.forName("jdk.jfr.consumer.RecordedThread").getMethod("getJavaName");
+            Object consumer = Proxy.newProxyInstance(classLoader, new Class<?>[]{consumerClass}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("accept".equals(method.getName())) {
+                        Object event = args[0];
+                        long duration = (Long) toMillis.invoke(getDuration.invoke(event));
+                        Object thread = getThread.invoke(event);
+                        report(app, thread != null ? String.valueOf(getJavaName.invoke(thread)) : null, duration, event);
+                        return null;
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return "VirtualThreadPinningMonitor";
+                }
+            });
+            streamClass.getMethod("onEvent", String.class, consumerClass).invoke(stream, PINNED_EVENT, consumer);
+            streamClass.getMethod("startAsync").invoke(stream);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Reporting virtual thread pinning longer than " + thresholdMillis + "ms");
+            }
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Virtual thread pinning can not be monitored on this JVM", e);
+            }
+        }
+    }
+
+    private static void report(GriffonApplication app, String threadName, long durationMillis, Object event) {
+        PINNED_COUNT.incrementAndGet();
+        LOG.warn("Virtual thread pinned for " + durationMillis + "ms, consider replacing synchronized blocks in the JDBC path: " + event);
+        if (app != null) {
+            app.event("JdbiVirtualThreadPinned", Arrays.<Object>asList(threadName, durationMillis));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi
+
+import griffon.test.GriffonUnitTestCase
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Andres Almiray
+ */
+class JdbiBulkheadTests extends GriffonUnitTestCase {
+    void testNestedAcquireTakesNoSecondPermit() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 1, 0, 0)
+        long outer = bulkhead.acquire()
+        long inner = bulkhead.acquire()
+        assert outer != 0L
+        assert inner == 0L
+        assert bulkhead.inFlight == 1
+
+        bulkhead.release(inner)
+        assert bulkhead.inFlight == 1
+        bulkhead.release(outer)
+        assert bulkhead.inFlight == 0
+    }
+
+    void testRejectsWhenQueueIsFull() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 1, 0, 1000)
+        long permit = bulkhead.acquire()
+
+        Throwable failure = onOtherThread { bulkhead.acquire() }
+        assert failure instanceof JdbiBulkheadRejectedException
+        assert bulkhead.rejected == 1L
+        assert bulkhead.inFlight == 1
+        assert bulkhead.queued == 0
+
+        bulkhead.release(permit)
+        assert bulkhead.inFlight == 0
+        assert onOtherThread { bulkhead.release(bulkhead.acquire()) } == null
+        assert bulkhead.inFlight == 0
+    }
+
+    void testRejectsWhenTimeoutElapses() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 1, 1, 50)
+        long permit = bulkhead.acquire()
+
+        long start = System.nanoTime()
+        Throwable failure = onOtherThread { bulkhead.acquire() }
+        assert failure instanceof JdbiBulkheadRejectedException
+        assert TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50L
+        assert bulkhead.rejected == 1L
+        assert bulkhead.inFlight == 1
+        assert bulkhead.queued == 0
+
+        bulkhead.release(permit)
+        assert bulkhead.inFlight == 0
+    }
+
+    void testQueuedCallGetsReleasedPermit() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 1, 1, 5000)
+        long permit = bulkhead.acquire()
+        CountDownLatch acquired = new CountDownLatch(1)
+        CountDownLatch done = new CountDownLatch(1)
+        Thread waiter = Thread.start {
+            long queuedPermit = bulkhead.acquire()
+            acquired.countDown()
+            done.await()
+            bulkhead.release(queuedPermit)
+        }
+
+        awaitCondition { bulkhead.queued == 1 }
+        bulkhead.release(permit)
+        assert acquired.await(5, TimeUnit.SECONDS)
+        assert bulkhead.inFlight == 1
+        assert bulkhead.queued == 0
+        done.countDown()
+        waiter.join()
+        assert bulkhead.inFlight == 0
+        assert bulkhead.rejected == 0L
+    }
+
+    void testDetachedPermitIsReleasedFromAnyThread() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 2, 0, 0)
+        long detached = bulkhead.acquireDetached()
+        assert detached != 0L
+        assert bulkhead.inFlight == 1
+
+        // the detached permit does not make this thread a holder
+        long permit = bulkhead.acquire()
+        assert permit != 0L
+        assert bulkhead.inFlight == 2
+        bulkhead.release(permit)
+
+        assert onOtherThread { bulkhead.releaseDetached(detached) } == null
+        assert bulkhead.inFlight == 0
+    }
+
+    void testDetachedPermitOfAHolderIsCoveredByItsPermit() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 1, 0, 0)
+        long permit = bulkhead.acquire()
+        long detached = bulkhead.acquireDetached()
+        assert detached == 0L
+        assert bulkhead.inFlight == 1
+
+        bulkhead.releaseDetached(detached)
+        assert bulkhead.inFlight == 1
+        bulkhead.release(permit)
+        assert bulkhead.inFlight == 0
+    }
+
+    void testAdaptiveLimitBacksOffToMinLimit() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 4, 0, 0, 2, 8, 2.0d, 0.5d)
+        assert bulkhead.adaptive
+        assert bulkhead.limit == 4
+
+        200.times { bulkhead.release(bulkhead.acquire()) }
+        40.times {
+            long permit = bulkhead.acquire()
+            Thread.sleep(2)
+            bulkhead.release(permit)
+        }
+        assert bulkhead.limit == 2
+        assert bulkhead.inFlight == 0
+    }
+
+    void testAdaptiveLimitGrowsUpToMaxLimit() {
+        JdbiBulkhead bulkhead = new JdbiBulkhead('test', 2, 0, 0, 1, 5, 2.0d, 0.5d)
+        int highest = 0
+        200.times {
+            // use up the whole limit, so that it may grow
+            int limit = bulkhead.limit
+            List<Long> detached = (1..<limit).collect { bulkhead.acquireDetached() }
+            bulkhead.release(bulkhead.acquire())
+            detached.each { bulkhead.releaseDetached(it) }
+            highest = Math.max(highest, bulkhead.limit)
+        }
+        assert highest == 5
+        assert bulkhead.inFlight == 0
+    }
+
+    void testRejectsInvalidSettings() {
+        shouldFail(IllegalArgumentException) { new JdbiBulkhead('test', 0, 0, 0) }
+        shouldFail(IllegalArgumentException) { new JdbiBulkhead('test', 2, 0, 0, 3, 2, 2.0d, 0.5d) }
+        shouldFail(IllegalArgumentException) { new JdbiBulkhead('test', 2, 0, 0, 1, 2, 2.0d, 1.0d) }
+        shouldFail(IllegalArgumentException) { new JdbiBulkhead('test', 2, 0, 0, 1, 2, 0.5d, 0.5d) }
+    }
+
+    private static Throwable onOtherThread(Closure body) {
+        Throwable failure = null
+        Thread.start {
+            try {
+                body()
+            } catch (Throwable t) {
+                failure = t
+            }
+        }.join()
+        failure
+    }
+
+    private static void awaitCondition(Closure condition) {
+        long deadline = System.currentTimeMillis() + 5000L
+        while (!condition()) {
+            assert System.currentTimeMillis() < deadline
+            Thread.sleep(5)
+        }
+    }
+}
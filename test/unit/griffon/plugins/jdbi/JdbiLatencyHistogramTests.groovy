@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi
+
+import griffon.test.GriffonUnitTestCase
+
+/**
+ * @author Andres Almiray
+ */
+class JdbiLatencyHistogramTests extends GriffonUnitTestCase {
+    void testSmallValuesHaveBucketsOfTheirOwn() {
+        (0L..15L).each { value ->
+            assert JdbiLatencyHistogram.upperBoundOf(JdbiLatencyHistogram.bucketFor(value)) == value
+        }
+    }
+
+    void testBucketsBoundValuesWithinOneSixteenth() {
+        List<Long> values = (16L..5000L) + [65535L, 65536L, 1000000L, 123456789L, 1L << 40, (1L << 41) - 1]
+        int previous = -1
+        for (long value : values) {
+            int bucket = JdbiLatencyHistogram.bucketFor(value)
+            long upperBound = JdbiLatencyHistogram.upperBoundOf(bucket)
+            assert upperBound >= value
+            assert upperBound - value < value / 16
+            assert bucket >= previous
+            previous = bucket
+        }
+    }
+
+    void testPercentilesStayWithinBucketError() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        (1L..1000L).each { histogram.record(it) }
+        assert histogram.count == 1000L
+        assert histogram.max == 1000L
+        assert histogram.mean == 500.5d
+        [50: 500L, 90: 900L, 99: 990L].each { percentile, expected ->
+            long value = histogram.getPercentile(percentile)
+            assert value >= expected
+            assert value <= expected * 1.0625d
+        }
+        assert histogram.getPercentile(100) == 1000L
+        assert histogram.getPercentile(0) == 1L
+    }
+
+    void testPercentileIsCappedByMax() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        histogram.record(1000L)
+        assert histogram.getPercentile(50) == 1000L
+    }
+
+    void testHugeValuesLandInTheLastBucket() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        long huge = 1L << 45
+        histogram.record(huge)
+        assert histogram.max == huge
+        assert JdbiLatencyHistogram.bucketFor(huge) == JdbiLatencyHistogram.bucketFor(Long.MAX_VALUE)
+        assert histogram.getPercentile(100) == JdbiLatencyHistogram.upperBoundOf(JdbiLatencyHistogram.bucketFor(huge))
+    }
+
+    void testRecordsNegativeValuesAsZero() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        histogram.record(-5L)
+        histogram.recordNanos(-5000L)
+        assert histogram.count == 2L
+        assert histogram.max == 0L
+        assert histogram.getPercentile(99) == 0L
+    }
+
+    void testRecordsNanosAsMicros() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        histogram.recordNanos(2500000L)
+        assert histogram.max == 2500L
+    }
+
+    void testResetStartsOver() {
+        JdbiLatencyHistogram histogram = new JdbiLatencyHistogram()
+        assert histogram.getPercentile(50) == 0L
+        assert histogram.mean == 0d
+        histogram.record(42L)
+        histogram.reset()
+        assert histogram.count == 0L
+        assert histogram.max == 0L
+        assert histogram.mean == 0d
+        assert histogram.getPercentile(50) == 0L
+    }
+}
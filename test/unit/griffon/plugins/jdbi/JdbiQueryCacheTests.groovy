@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi
+
+import griffon.test.GriffonUnitTestCase
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * @author Andres Almiray
+ */
+class JdbiQueryCacheTests extends GriffonUnitTestCase {
+    private static final String PEOPLE = 'select * from people where id = :id'
+    private static final String PETS = 'select * from pets where owner = :id'
+
+    void testCachesRowsAsUnmodifiable() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 60000)
+        assert cache.get(PEOPLE, [id: 1]) == null
+        cache.put(PEOPLE, [id: 1], [[id: 1, name: 'Andres']], cache.beginLoad(PEOPLE))
+
+        List<Map<String, Object>> rows = cache.get(PEOPLE, [id: 1])
+        assert rows == [[id: 1, name: 'Andres']]
+        assert cache.get(PEOPLE, [id: 2]) == null
+        assert cache.hits == 1L
+        assert cache.misses == 2L
+        shouldFail(UnsupportedOperationException) { rows << [id: 2] }
+        shouldFail(UnsupportedOperationException) { rows[0].name = 'Dierk' }
+    }
+
+    void testWriteDuringLoadIsNotCached() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 60000)
+        JdbiQueryCache.Load people = cache.beginLoad(PEOPLE)
+        JdbiQueryCache.Load pets = cache.beginLoad(PETS)
+        cache.invalidate(['people'])
+
+        assert cache.put(PEOPLE, [id: 1], [[id: 1]], people) == [[id: 1]]
+        cache.put(PETS, [id: 1], [[owner: 1]], pets)
+        assert cache.get(PEOPLE, [id: 1]) == null
+        // loads of other tables are unaffected
+        assert cache.get(PETS, [id: 1]) == [[owner: 1]]
+
+        // a load that begins after the write is cached
+        cache.put(PEOPLE, [id: 1], [[id: 1]], cache.beginLoad(PEOPLE))
+        assert cache.get(PEOPLE, [id: 1]) == [[id: 1]]
+    }
+
+    void testInvalidateAllDuringLoadIsNotCached() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 60000)
+        JdbiQueryCache.Load load = cache.beginLoad(PETS)
+        cache.invalidateAll()
+        cache.put(PETS, [id: 1], [[owner: 1]], load)
+        assert cache.get(PETS, [id: 1]) == null
+        assert cache.size == 0
+    }
+
+    void testInvalidatesEntriesOfEveryTableTheyRead() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 60000)
+        String join = 'select p.* from app.People p join "PETS" t on t.owner = p.id'
+        cache.put(join, null, [[id: 1]], cache.beginLoad(join))
+        cache.put(PEOPLE, [id: 1], [[id: 1]], cache.beginLoad(PEOPLE))
+        cache.put(PETS, [id: 1], [[owner: 1]], cache.beginLoad(PETS))
+
+        cache.invalidate([JdbiQueryCache.writtenTable('insert into `pets` (owner) values (:owner)')])
+        assert cache.get(join, null) == null
+        assert cache.get(PETS, [id: 1]) == null
+        assert cache.get(PEOPLE, [id: 1]) == [[id: 1]]
+        assert cache.invalidations == 2L
+    }
+
+    void testFindsTheWrittenTable() {
+        assert JdbiQueryCache.writtenTable('insert into people (id) values (1)') == 'people'
+        assert JdbiQueryCache.writtenTable('  UPDATE app.People set name = :name') == 'people'
+        assert JdbiQueryCache.writtenTable('delete from [pets] where id = 1') == 'pets'
+        assert JdbiQueryCache.writtenTable('merge into "PETS" using dual on (1 = 1)') == 'pets'
+        assert JdbiQueryCache.writtenTable('truncate table people') == 'people'
+        assert JdbiQueryCache.writtenTable('truncate pets') == 'pets'
+        assert JdbiQueryCache.writtenTable('select * from people') == null
+    }
+
+    void testEvictsLeastRecentlyUsedEntries() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 8, 60000)
+        8.times {
+            cache.put(PEOPLE, [id: it], [[id: it]], cache.beginLoad(PEOPLE))
+            Thread.sleep(1)
+        }
+        assert cache.size == 8
+        assert cache.get(PEOPLE, [id: 0]) != null
+        Thread.sleep(1)
+
+        cache.put(PEOPLE, [id: 8], [[id: 8]], cache.beginLoad(PEOPLE))
+        // down to 7/8 of the limit, the oldest untouched entries go first
+        assert cache.size == 7
+        assert cache.evictions == 2L
+        assert cache.get(PEOPLE, [id: 0]) != null
+        assert cache.get(PEOPLE, [id: 1]) == null
+        assert cache.get(PEOPLE, [id: 2]) == null
+        assert cache.get(PEOPLE, [id: 8]) != null
+    }
+
+    void testExpiresEntries() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 0)
+        cache.put(PEOPLE, [id: 1], [[id: 1]], cache.beginLoad(PEOPLE))
+        assert cache.get(PEOPLE, [id: 1]) == null
+        assert cache.expirations == 1L
+        assert cache.size == 0
+    }
+
+    void testNeverKeepsStaleRowsWhenWritesRaceLoads() {
+        JdbiQueryCache cache = new JdbiQueryCache('test', 10, 60000)
+        AtomicInteger version = new AtomicInteger()
+        AtomicBoolean writing = new AtomicBoolean(true)
+        List<Thread> readers = (1..4).collect {
+            Thread.start {
+                while (writing.get()) {
+                    if (cache.get(PEOPLE, [id: 1]) == null) {
+                        JdbiQueryCache.Load load = cache.beginLoad(PEOPLE)
+                        int current = version.get()
+                        Thread.yield()
+                        cache.put(PEOPLE, [id: 1], [[version: current]], load)
+                    }
+                }
+            }
+        }
+        2000.times {
+            version.incrementAndGet()
+            cache.invalidate(['people'])
+            Thread.yield()
+        }
+        writing.set(false)
+        readers*.join()
+
+        List<Map<String, Object>> rows = cache.get(PEOPLE, [id: 1])
+        assert rows == null || rows == [[version: 2000]]
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi
+
+import griffon.test.GriffonUnitTestCase
+
+/**
+ * @author Andres Almiray
+ */
+class JdbiShardStrategyTests extends GriffonUnitTestCase {
+    void testModuloWrapsNegativeKeys() {
+        JdbiShardStrategy strategy = JdbiShardStrategy.modulo(3)
+        assert strategy.shardCount == 3
+        assert (0L..5L).collect { strategy.shardFor(it) } == [0, 1, 2, 0, 1, 2]
+        assert strategy.shardFor(-1L) == 2
+        assert strategy.shardFor(-3L) == 0
+        assert strategy.shardFor(Long.MIN_VALUE) in 0..2
+        shouldFail(IllegalArgumentException) { JdbiShardStrategy.modulo(0) }
+    }
+
+    void testRangeStartsAShardAtEachBound() {
+        JdbiShardStrategy strategy = JdbiShardStrategy.range(100L, 200L)
+        assert strategy.shardCount == 3
+        assert strategy.shardFor(Long.MIN_VALUE) == 0
+        assert strategy.shardFor(99L) == 0
+        assert strategy.shardFor(100L) == 1
+        assert strategy.shardFor(199L) == 1
+        assert strategy.shardFor(200L) == 2
+        assert strategy.shardFor(Long.MAX_VALUE) == 2
+        assert JdbiShardStrategy.range().shardFor(42L) == 0
+        shouldFail(IllegalArgumentException) { JdbiShardStrategy.range(200L, 100L) }
+        shouldFail(IllegalArgumentException) { JdbiShardStrategy.range(100L, 100L) }
+    }
+
+    void testConsistentHashSpreadsKeysEvenly() {
+        JdbiShardStrategy strategy = JdbiShardStrategy.consistentHash(['a', 'b', 'c'] as String[], 100)
+        assert strategy.shardCount == 3
+        int[] counts = new int[3]
+        30000.times { counts[strategy.shardFor((long) it)]++ }
+        counts.each { assert it > 7000 && it < 13000 }
+        shouldFail(IllegalArgumentException) { JdbiShardStrategy.consistentHash(new String[0], 100) }
+        shouldFail(IllegalArgumentException) { JdbiShardStrategy.consistentHash(['a'] as String[], 0) }
+    }
+
+    void testConsistentHashOnlyMovesKeysToANewShard() {
+        JdbiShardStrategy before = JdbiShardStrategy.consistentHash(['a', 'b', 'c'] as String[], 100)
+        JdbiShardStrategy after = JdbiShardStrategy.consistentHash(['a', 'b', 'c', 'd'] as String[], 100)
+        int moved = 0
+        10000.times {
+            int shard = after.shardFor((long) it)
+            if (shard != before.shardFor((long) it)) {
+                assert shard == 3
+                moved++
+            }
+        }
+        // about a quarter of the keys, far from what modulo would move
+        assert moved > 1500 && moved < 3500
+    }
+
+    void testResolvesObjectKeys() {
+        JdbiShardStrategy strategy = JdbiShardStrategy.modulo(4)
+        assert strategy.shardFor((Object) 6) == 2
+        assert strategy.shardFor((Object) 6L) == 2
+        assert strategy.shardFor((Object) new BigInteger('6')) == 2
+        assert strategy.shardFor((Object) 'key') == strategy.shardFor((long) 'key'.hashCode())
+        assert strategy.shardFor((Object) null) == 0
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.jdbi
+
+import griffon.test.GriffonUnitTestCase
+import org.skife.jdbi.v2.DBI
+
+import javax.sql.DataSource
+import java.sql.SQLException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * @author Andres Almiray
+ */
+class JdbiWriteBehindTests extends GriffonUnitTestCase {
+    private static final String DATASOURCE = 'writeBehindTests'
+    private static final String SQL = 'update counters set hits = :hits where id = :id'
+    // flushes only when asked to
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1)
+
+    private JdbiWriteBehind writeBehind
+
+    protected void tearDown() {
+        writeBehind?.close()
+        JdbiHolder.instance.disconnectJdbi(DATASOURCE)
+        super.tearDown()
+    }
+
+    void testCoalescesWritesOfTheSameKey() {
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 2, 100, NEVER, 0)
+        assert writeBehind.offer(SQL, 1, [id: 1, hits: 1])
+        assert writeBehind.offer(SQL, 1, [id: 1, hits: 2])
+        assert writeBehind.queueDepth == 1
+        assert writeBehind.offer(SQL, 2, [id: 2, hits: 1])
+        assert writeBehind.queueDepth == 2
+
+        // full, but a pending key still takes the latest value
+        assert !writeBehind.offer(SQL, 3, [id: 3, hits: 1])
+        assert writeBehind.offer(SQL, 1, [id: 1, hits: 3])
+        assert writeBehind.offer('delete from counters where id = :id', 1, [id: 1]) == false
+
+        JdbiWriteBehind.Snapshot snapshot = writeBehind.snapshot
+        assert snapshot.queueDepth == 2
+        assert snapshot.enqueued == 2L
+        assert snapshot.coalesced == 2L
+        assert snapshot.rejected == 2L
+    }
+
+    void testOfferWithTimeoutWaitsForRoom() {
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 1, 100, NEVER, 0)
+        assert writeBehind.offer(SQL, 1, [id: 1, hits: 1])
+        long start = System.nanoTime()
+        assert !writeBehind.offer(SQL, 2, [id: 2, hits: 1], 50, TimeUnit.MILLISECONDS)
+        assert TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50L
+        assert writeBehind.snapshot.rejected == 1L
+    }
+
+    void testDropsWritesAfterMaxRetries() {
+        // the datasource is not connected, every flush fails
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 10, 100, NEVER, 1)
+        writeBehind.offer(SQL, 1, [id: 1, hits: 1])
+        writeBehind.offer(SQL, 2, [id: 2, hits: 1])
+
+        assert writeBehind.flush() == 0
+        assert writeBehind.queueDepth == 2
+        assert writeBehind.snapshot.failed == 0L
+
+        assert writeBehind.flush() == 0
+        assert writeBehind.queueDepth == 0
+        assert writeBehind.snapshot.failed == 2L
+    }
+
+    void testFailedWriteGivesWayToNewerValue() {
+        CountDownLatch opening = new CountDownLatch(1)
+        CountDownLatch fail = new CountDownLatch(1)
+        JdbiHolder.instance.setJdbi(DATASOURCE, new DBI(failingDataSource(opening, fail)))
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 10, 100, NEVER, 3)
+        writeBehind.offer(SQL, 1, [id: 1, hits: 1])
+
+        Thread flusher = Thread.start { writeBehind.flush() }
+        assert opening.await(5, TimeUnit.SECONDS)
+        writeBehind.offer(SQL, 1, [id: 1, hits: 2])
+        fail.countDown()
+        flusher.join()
+
+        // only the newer value is left, the failed one is not queued again
+        assert writeBehind.queueDepth == 1
+        assert writeBehind.snapshot.failed == 0L
+    }
+
+    void testRequeuedWritesStayWithinMaxPending() {
+        CountDownLatch opening = new CountDownLatch(1)
+        CountDownLatch fail = new CountDownLatch(1)
+        JdbiHolder.instance.setJdbi(DATASOURCE, new DBI(failingDataSource(opening, fail)))
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 3, 100, NEVER, 3)
+        (1..3).each { writeBehind.offer(SQL, it, [id: it, hits: 1]) }
+        assert !writeBehind.offer(SQL, 4, [id: 4, hits: 1])
+
+        Thread flusher = Thread.start { writeBehind.flush() }
+        assert opening.await(5, TimeUnit.SECONDS)
+        // the batch is out, the queue takes new writes meanwhile
+        assert writeBehind.queueDepth == 0
+        assert writeBehind.offer(SQL, 4, [id: 4, hits: 1])
+        assert writeBehind.offer(SQL, 5, [id: 5, hits: 1])
+        fail.countDown()
+        flusher.join()
+
+        // the two oldest failed writes are dropped to make room
+        JdbiWriteBehind.Snapshot snapshot = writeBehind.snapshot
+        assert snapshot.queueDepth == 3
+        assert snapshot.failed == 2L
+        assert !writeBehind.offer(SQL, 6, [id: 6, hits: 1])
+    }
+
+    void testCopiesParametersWhenQueued() {
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 10, 100, NEVER, 0)
+        Map<String, Object> params = [id: 1, hits: 1]
+        writeBehind.offer(SQL, 1, params)
+        params.hits = 2
+
+        def write = writeBehind.@pending.values().iterator().next()
+        assert write.@params == [id: 1, hits: 1]
+    }
+
+    void testCloseRefusesFurtherWrites() {
+        writeBehind = new JdbiWriteBehind(DATASOURCE, 10, 100, NEVER, 0)
+        writeBehind.close()
+        assert writeBehind.closed
+        shouldFail(IllegalStateException) { writeBehind.offer(SQL, 1, [id: 1, hits: 1]) }
+        shouldFail(IllegalStateException) { writeBehind.put(SQL, 1, [id: 1, hits: 1]) }
+    }
+
+    void testRejectsInvalidSettings() {
+        shouldFail(IllegalArgumentException) { new JdbiWriteBehind(DATASOURCE, 0, 100, 1000, 0) }
+        shouldFail(IllegalArgumentException) { new JdbiWriteBehind(DATASOURCE, 10, 0, 1000, 0) }
+        shouldFail(IllegalArgumentException) { new JdbiWriteBehind(DATASOURCE, 10, 100, 0, 0) }
+    }
+
+    // signals opening when a connection is asked for, then fails once fail is counted down
+    private static DataSource failingDataSource(CountDownLatch opening, CountDownLatch fail) {
+        [getConnection: { Object[] args ->
+            opening.countDown()
+            fail.await()
+            throw new SQLException('database is down', '08001')
+        }] as DataSource
+    }
+}